@@ -20,42 +20,133 @@
 package org.getspout.spout;
 
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.getspout.spout.config.ConfigReader;
 import org.getspout.spoutapi.packet.CompressiblePacket;
+import org.getspout.spoutapi.packet.CompressionStats;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
+/**
+ * Pool of packet compression workers.
+ * <p/>
+ * Every player is pinned to one worker so the packets queued for a player are compressed and sent in the order they were queued.
+ * When a worker's queue is full the enqueuing thread waits for space instead of failing.
+ */
 public class PacketCompressionThread extends Thread {
-	private static PacketCompressionThread instance = null;
+	private static PacketCompressionThread[] workers = null;
 
 	private static final int QUEUE_CAPACITY = 1024 * 10;
+	private static final long STALL_WAIT_MILLIS = 50;
+
+	private static final AtomicLong packetsCompressed = new AtomicLong();
+	private static final AtomicLong compressionNanos = new AtomicLong();
+	private static final AtomicLong stalls = new AtomicLong();
+
 	private final LinkedBlockingDeque<QueuedPacket> queue = new LinkedBlockingDeque<QueuedPacket>(QUEUE_CAPACITY);
 
-	private PacketCompressionThread() {
-		super("Spout Packet Compression Thread");
+	private PacketCompressionThread(int index) {
+		super("Spout Packet Compression Thread #" + index);
+		setDaemon(true);
 	}
 
 	public static void startThread() {
-		instance = new PacketCompressionThread();
-		instance.start();
+		int threads = ConfigReader.getCompressionThreads();
+		if (threads <= 0) {
+			threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		}
+		PacketCompressionThread[] pool = new PacketCompressionThread[threads];
+		for (int i = 0; i < threads; i++) {
+			pool[i] = new PacketCompressionThread(i);
+			pool[i].start();
+		}
+		workers = pool;
 	}
 
 	public static void endThread() {
-		instance.interrupt();
-		try {
-			instance.join();
-		} catch (InterruptedException ie) {
+		PacketCompressionThread[] pool = workers;
+		workers = null;
+		if (pool == null) {
+			return;
+		}
+		for (PacketCompressionThread worker : pool) {
+			worker.interrupt();
+		}
+		for (PacketCompressionThread worker : pool) {
+			try {
+				worker.join();
+			} catch (InterruptedException ie) {
+			}
 		}
-		instance = null;
 	}
 
-	public static PacketCompressionThread getInstance() {
-		return instance;
+	public static void add(CompressiblePacket packet, SpoutPlayer player) {
+		PacketCompressionThread[] pool = workers;
+		if (pool == null) {
+			return;
+		}
+		PacketCompressionThread worker = pool[(player.getUniqueId().hashCode() & Integer.MAX_VALUE) % pool.length];
+		QueuedPacket queued = new QueuedPacket(player, packet);
+		if (worker.queue.offer(queued)) {
+			return;
+		}
+		// The worker is behind, hold the caller until it catches up
+		stalls.incrementAndGet();
+		try {
+			while (!worker.queue.offer(queued, STALL_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (workers != pool) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
-	public static void add(CompressiblePacket packet, SpoutPlayer player) {
-		if (instance != null) {
-			instance.queue.add(new QueuedPacket(player, packet));
+	/**
+	 * Gets the number of packets waiting to be compressed over all workers
+	 * @return queue depth
+	 */
+	public static int getQueueDepth() {
+		PacketCompressionThread[] pool = workers;
+		if (pool == null) {
+			return 0;
+		}
+		int depth = 0;
+		for (PacketCompressionThread worker : pool) {
+			depth += worker.queue.size();
 		}
+		return depth;
+	}
+
+	public static int getWorkerCount() {
+		PacketCompressionThread[] pool = workers;
+		return pool == null ? 0 : pool.length;
+	}
+
+	public static long getPacketsCompressed() {
+		return packetsCompressed.get();
+	}
+
+	public static long getCompressionNanos() {
+		return compressionNanos.get();
+	}
+
+	/**
+	 * Gets the number of bytes removed from packet payloads by compression
+	 * @return bytes saved
+	 */
+	public static long getBytesSaved() {
+		return CompressionStats.getUncompressedBytes() - CompressionStats.getCompressedBytes();
+	}
+
+	/**
+	 * Gets the number of times a caller had to wait for space in a full queue
+	 * @return stall count
+	 */
+	public static long getStalls() {
+		return stalls.get();
 	}
 
 	@SuppressWarnings("deprecation")
@@ -63,8 +154,15 @@ public class PacketCompressionThread extends Thread {
 		while (!isInterrupted()) {
 			try {
 				QueuedPacket packet = queue.take();
-				packet.packet.compress();
-				packet.player.sendPacket(packet.packet);
+				try {
+					long start = System.nanoTime();
+					packet.packet.compress();
+					compressionNanos.addAndGet(System.nanoTime() - start);
+					packetsCompressed.incrementAndGet();
+					packet.player.sendPacket(packet.packet);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
 			} catch (InterruptedException e) {
 				break;
 			}
@@ -0,0 +1,42 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spout;
+
+/**
+ * The queues outgoing packets of a player are sorted into, in the order they are flushed.
+ */
+public enum PacketLane {
+	/**
+	 * Keep alives, chat and disconnects, always sent first
+	 */
+	CONTROL,
+	/**
+	 * All other vanilla packets and Spout packets without a lane of their own, always sent in full
+	 */
+	GAMEPLAY,
+	/**
+	 * Widget and screen updates, limited to a byte budget per tick
+	 */
+	UI,
+	/**
+	 * Custom block overrides and cache file transfers, limited to a byte budget per tick
+	 */
+	BULK;
+}
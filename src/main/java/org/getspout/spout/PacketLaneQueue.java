@@ -0,0 +1,307 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spout;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import net.minecraft.server.v1_6_R3.MinecraftServer;
+import net.minecraft.server.v1_6_R3.Packet;
+
+import org.getspout.spout.config.ConfigReader;
+import org.getspout.spout.packet.CustomPacket;
+import org.getspout.spoutapi.packet.PacketBatch;
+import org.getspout.spoutapi.packet.PacketCustomBlockChunkOverride;
+import org.getspout.spoutapi.packet.PacketWidget;
+import org.getspout.spoutapi.packet.PreparedPacket;
+import org.getspout.spoutapi.packet.SpoutPacket;
+
+/**
+ * Outgoing packet queue of a player, split into {@link PacketLane}s.
+ * <p/>
+ * The control and gameplay lanes are always flushed completely and keep the order packets were queued in. The UI and
+ * bulk lanes take turns and each stops for the tick once its byte budget is used up, so a burst of widgets or chunk
+ * overrides can not hold back the rest of the connection. Since those lanes can be held back to a later tick, packets
+ * are always added to their end, so a lane never sends a newer packet ahead of an older one. A queued widget or chunk
+ * override that is replaced by a newer one before it was sent is dropped.
+ * <p/>
+ * The budgets only spread traffic over ticks, they never let a lane grow without bound. Once a lane holds more than
+ * the configured backlog in bytes, or more than {@link #MAX_BACKLOG_PACKETS} packets, it is flushed without its budget
+ * until it is back under that limit.
+ */
+public class PacketLaneQueue {
+	private static final PacketLane[] LANES = PacketLane.values();
+	public static final int MAX_BACKLOG_PACKETS = 4096;
+
+	private final ArrayDeque<QueuedPacket>[] queues;
+	private final HashMap<Object, QueuedPacket>[] superseding;
+	private final long[] queuedBytes = new long[LANES.length];
+	private final int[] depth = new int[LANES.length];
+	private final long[] budget = new long[LANES.length];
+	private int budgetTick = Integer.MIN_VALUE;
+	private PacketLane nextLane = PacketLane.UI;
+	private long coalesced = 0;
+
+	@SuppressWarnings("unchecked")
+	public PacketLaneQueue() {
+		queues = new ArrayDeque[LANES.length];
+		superseding = new HashMap[LANES.length];
+		for (int i = 0; i < LANES.length; i++) {
+			queues[i] = new ArrayDeque<QueuedPacket>();
+			superseding[i] = new HashMap<Object, QueuedPacket>();
+		}
+	}
+
+	/**
+	 * Queues the packet in its lane
+	 * @param packet to queue
+	 * @param first true to put the packet in front of its lane, ignored for the UI and bulk lanes
+	 */
+	public void add(Packet packet, boolean first) {
+		PacketLane lane = getLane(packet);
+		int size = 0;
+		Object key = null;
+		if (lane == PacketLane.UI || lane == PacketLane.BULK) {
+			// Serialized before taking the lock, the size is needed for the budget
+			CustomPacket custom = (CustomPacket) packet;
+			size = custom.prepare();
+			key = getSupersedeKey(custom.packet);
+		}
+		QueuedPacket queued = new QueuedPacket(packet, lane, size, key);
+		synchronized (this) {
+			int index = lane.ordinal();
+			if (key != null) {
+				QueuedPacket old = superseding[index].put(key, queued);
+				if (old != null && !old.superseded) {
+					// Left in the queue and skipped when it comes up, removing it would scan the whole lane
+					old.superseded = true;
+					old.packet = null;
+					queuedBytes[index] -= old.size;
+					depth[index]--;
+					coalesced++;
+				}
+			}
+			if (first && lane != PacketLane.UI && lane != PacketLane.BULK) {
+				queues[index].addFirst(queued);
+			} else {
+				queues[index].addLast(queued);
+			}
+			queuedBytes[index] += size;
+			depth[index]++;
+		}
+	}
+
+	/**
+	 * Takes the next packet that may be sent in this tick
+	 * @param all true to ignore the byte budgets
+	 * @return packet, or null if nothing else may be sent in this tick
+	 */
+	public synchronized Packet poll(boolean all) {
+		int tick = MinecraftServer.currentTick;
+		if (tick != budgetTick) {
+			budgetTick = tick;
+			budget[PacketLane.UI.ordinal()] = getBudget(ConfigReader.getUIPacketBudget());
+			budget[PacketLane.BULK.ordinal()] = getBudget(ConfigReader.getBulkPacketBudget());
+		}
+		QueuedPacket queued = pollLive(PacketLane.CONTROL.ordinal());
+		if (queued == null) {
+			queued = pollLive(PacketLane.GAMEPLAY.ordinal());
+		}
+		if (queued == null) {
+			// The UI and bulk lanes alternate, a lane may overdraw its budget with its last packet of the tick
+			PacketLane other = nextLane == PacketLane.UI ? PacketLane.BULK : PacketLane.UI;
+			queued = pollBudgeted(nextLane, all);
+			if (queued == null) {
+				queued = pollBudgeted(other, all);
+			} else {
+				nextLane = other;
+			}
+		}
+		if (queued == null) {
+			return null;
+		}
+		int index = queued.lane.ordinal();
+		queuedBytes[index] -= queued.size;
+		depth[index]--;
+		if (queued.key != null && superseding[index].get(queued.key) == queued) {
+			superseding[index].remove(queued.key);
+		}
+		return queued.packet;
+	}
+
+	/**
+	 * Budgets of 0 or less turn the limit off
+	 */
+	private static long getBudget(int configured) {
+		return configured > 0 ? configured : Long.MAX_VALUE;
+	}
+
+	private QueuedPacket pollBudgeted(PacketLane lane, boolean all) {
+		int index = lane.ordinal();
+		if (!all && budget[index] <= 0 && !isBacklogged(index)) {
+			return null;
+		}
+		QueuedPacket queued = pollLive(index);
+		if (queued != null) {
+			budget[index] -= queued.size;
+		}
+		return queued;
+	}
+
+	private boolean isBacklogged(int index) {
+		int backlog = ConfigReader.getPacketLaneBacklog();
+		return depth[index] > MAX_BACKLOG_PACKETS || (backlog > 0 && queuedBytes[index] > backlog);
+	}
+
+	/**
+	 * Takes the first packet of the lane, skipping the ones that were superseded
+	 */
+	private QueuedPacket pollLive(int index) {
+		QueuedPacket queued;
+		do {
+			queued = queues[index].pollFirst();
+		} while (queued != null && queued.superseded);
+		return queued;
+	}
+
+	public synchronized boolean isEmpty() {
+		for (int lane : depth) {
+			if (lane > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public synchronized int getDepth(PacketLane lane) {
+		return depth[lane.ordinal()];
+	}
+
+	public synchronized long getQueuedBytes(PacketLane lane) {
+		return queuedBytes[lane.ordinal()];
+	}
+
+	/**
+	 * Gets how long the oldest packet of the lane has been waiting
+	 * @param lane to check
+	 * @return wait time in milliseconds, 0 if the lane is empty
+	 */
+	public synchronized long getOldestWait(PacketLane lane) {
+		long oldest = Long.MAX_VALUE;
+		for (QueuedPacket queued : queues[lane.ordinal()]) {
+			if (!queued.superseded) {
+				oldest = Math.min(oldest, queued.queued);
+			}
+		}
+		return oldest == Long.MAX_VALUE ? 0 : (System.nanoTime() - oldest) / 1000000L;
+	}
+
+	/**
+	 * Gets the number of queued packets that were dropped because a newer packet replaced them
+	 * @return coalesced packets
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	private static PacketLane getLane(Packet packet) {
+		if (packet instanceof CustomPacket) {
+			SpoutPacket spoutPacket = unwrap(((CustomPacket) packet).packet);
+			if (spoutPacket == null) {
+				return PacketLane.GAMEPLAY;
+			}
+			switch (spoutPacket.getPacketType()) {
+				case PacketWidget:
+				case PacketWidgetRemove:
+				case PacketScreenAction:
+				case PacketOpenScreen:
+				case PacketFocusUpdate:
+					return PacketLane.UI;
+				case PacketCustomBlockOverride:
+				case PacketCustomMultiBlockOverride:
+				case PacketCustomBlockChunkOverride:
+				case PacketPreCacheFile:
+				case PacketCacheFile:
+				case PacketCacheDeleteFile:
+				case PacketPreCacheCompleted:
+				case PacketValidatePrecache:
+				case PacketRequestPrecache:
+				case PacketSendPrecache:
+					return PacketLane.BULK;
+				default:
+					return PacketLane.GAMEPLAY;
+			}
+		}
+		int id;
+		try {
+			id = packet.n();
+		} catch (Exception e) {
+			return PacketLane.GAMEPLAY;
+		}
+		if (id == 0 || id == 3 || id == 255) {
+			return PacketLane.CONTROL;
+		}
+		return PacketLane.GAMEPLAY;
+	}
+
+	private static SpoutPacket unwrap(SpoutPacket packet) {
+		if (packet instanceof PreparedPacket) {
+			return ((PreparedPacket) packet).getPacket();
+		}
+		if (packet instanceof PacketBatch) {
+			PacketBatch batch = (PacketBatch) packet;
+			return batch.isEmpty() ? null : unwrap(batch.getPackets().get(0));
+		}
+		return packet;
+	}
+
+	/**
+	 * Gets the key of packets that fully replace earlier packets with the same key
+	 */
+	private static Object getSupersedeKey(SpoutPacket packet) {
+		if (packet instanceof PreparedPacket) {
+			packet = ((PreparedPacket) packet).getPacket();
+		}
+		if (packet instanceof PacketWidget) {
+			return ((PacketWidget) packet).getWidget().getId();
+		}
+		if (packet instanceof PacketCustomBlockChunkOverride) {
+			PacketCustomBlockChunkOverride override = (PacketCustomBlockChunkOverride) packet;
+			return Long.valueOf(((long) override.getChunkX() << 32) | (override.getChunkZ() & 0xFFFFFFFFL));
+		}
+		return null;
+	}
+
+	private static class QueuedPacket {
+		Packet packet;
+		boolean superseded = false;
+		final PacketLane lane;
+		final int size;
+		final Object key;
+		final long queued = System.nanoTime();
+
+		QueuedPacket(Packet packet, PacketLane lane, int size, Object key) {
+			this.packet = packet;
+			this.lane = lane;
+			this.size = size;
+			this.key = key;
+		}
+	}
+}
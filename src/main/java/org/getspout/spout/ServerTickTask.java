@@ -26,6 +26,7 @@ import org.getspout.spout.block.SpoutCraftChunk;
 import org.getspout.spout.inventory.SimpleMaterialManager;
 import org.getspout.spout.player.SpoutCraftPlayer;
 import org.getspout.spoutapi.SpoutManager;
+import org.getspout.spoutapi.chunkstore.SimpleChunkDataManager;
 import org.getspout.spoutapi.event.spout.ServerTickEvent;
 
 public class ServerTickTask implements Runnable {
@@ -40,6 +41,7 @@ public class ServerTickTask implements Runnable {
 			}
 		}
 		SpoutCraftChunk.updateTicks();
+		((SimpleChunkDataManager)SpoutManager.getChunkDataManager()).flushItemMaps();
 		ServerTickEvent event = new ServerTickEvent();
 		Bukkit.getServer().getPluginManager().callEvent(event);
 	}
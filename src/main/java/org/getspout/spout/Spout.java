@@ -51,6 +51,7 @@ import org.getspout.spout.listeners.PluginListener;
 import org.getspout.spout.listeners.SpoutWorldListener;
 import org.getspout.spout.listeners.SpoutEntityListener;
 import org.getspout.spout.listeners.InventoryListener;
+import org.getspout.spout.netcache.CachedMapChunkPacket;
 import org.getspout.spout.packet.CustomPacket;
 import org.getspout.spout.packet.SimplePacketManager;
 import org.getspout.spout.player.SimpleBiomeManager;
@@ -61,9 +62,11 @@ import org.getspout.spout.player.SpoutCraftPlayer;
 import org.getspout.spout.sound.SimpleSoundManager;
 import org.getspout.spout.util.DeadlockMonitor;
 import org.getspout.spoutapi.SpoutManager;
+import org.getspout.spoutapi.chunkstore.ChunkStore;
 import org.getspout.spoutapi.chunkstore.SimpleChunkDataManager;
 import org.getspout.spoutapi.inventory.ItemMap;
 import org.getspout.spoutapi.io.CRCStore;
+import org.getspout.spoutapi.io.FileCRCStore;
 import org.getspout.spoutapi.io.store.FlatFileStore;
 import org.getspout.spoutapi.packet.PacketRenderDistance;
 import org.getspout.spoutapi.player.SpoutPlayer;
@@ -136,6 +139,7 @@ public class Spout extends JavaPlugin {
 		dm.closeAllFiles();
 
 		CRCConfig.save();
+		FileCRCStore.save();
 
 		if (itemMapConfig != null) {
 			synchronized (itemMapConfig) {
@@ -210,6 +214,9 @@ public class Spout extends JavaPlugin {
 
 			PacketCompressionThread.startThread();
 
+			ChunkStore.setMaxOpenRegionFiles(ConfigReader.getRegionFileCacheSize());
+			ChunkStore.setRegionFileIdleTimeout(ConfigReader.getRegionFileIdleTimeout() * 1000L);
+
 			// Start counting ticks
 			Bukkit.getServer().getScheduler().scheduleSyncRepeatingTask(this, new ServerTickTask(), 0, 1);
 
@@ -217,6 +224,7 @@ public class Spout extends JavaPlugin {
 			// Can not remove them on disable because the packets will still be in the send queue
 			CustomPacket.removeClassMapping();
 			CustomPacket.addClassMapping();
+			CachedMapChunkPacket.addClassMapping();
 
 			SimpleChunkDataManager dm = (SimpleChunkDataManager) SpoutManager.getChunkDataManager();
 			dm.loadAllChunks();
@@ -236,6 +244,14 @@ public class Spout extends JavaPlugin {
 		CRCConfig.load();
 
 		CRCStore.setConfigFile(CRCConfig);
+		FileCRCStore.setIndexFile(new File(this.getDataFolder(), "fileCRCCache.txt"));
+		// Joins only touch the index in memory, it is written out once a minute and on disable
+		Bukkit.getServer().getScheduler().runTaskTimerAsynchronously(this, new Runnable() {
+			@Override
+			public void run() {
+				FileCRCStore.save();
+			}
+		}, 1200, 1200);
 
 		itemMapConfig = new FlatFileStore<Integer>(new File(this.getDataFolder(), "itemMap.txt"), Integer.class);
 		if (!itemMapConfig.load()) {
@@ -20,7 +20,6 @@
 package org.getspout.spout;
 
 import java.lang.reflect.Field;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.minecraft.server.v1_6_R3.EntityPlayer;
@@ -36,10 +35,12 @@ import net.minecraft.server.v1_6_R3.Packet20NamedEntitySpawn;
 import net.minecraft.server.v1_6_R3.Packet24MobSpawn;
 import net.minecraft.server.v1_6_R3.Packet250CustomPayload;
 import net.minecraft.server.v1_6_R3.Packet3Chat;
+import net.minecraft.server.v1_6_R3.Packet51MapChunk;
 
 import org.bukkit.ChatColor;
 import org.bukkit.entity.LivingEntity;
 
+import org.getspout.spout.netcache.CachedMapChunkPacket;
 import org.getspout.spout.netcache.ChunkNetCache;
 import org.getspout.spout.packet.listener.PacketListeners;
 import org.getspout.spout.packet.standard.MCCraftPacket;
@@ -54,6 +55,7 @@ public class SpoutPlayerConnection extends PlayerConnection {
 	protected Field entityListField = null;
 	private final ChunkNetCache chunkNetCache = new ChunkNetCache();
 
+	// Only used by flushes on the main thread, flushes while kicking allocate their own
 	private MCCraftPacket[] packetWrappers = new MCCraftPacket[256];
 
 	public SpoutPlayerConnection(MinecraftServer minecraftserver, INetworkManager networkmanager, EntityPlayer entityplayer) {
@@ -169,14 +171,23 @@ public class SpoutPlayerConnection extends PlayerConnection {
 		}
 	}
 
-	private LinkedBlockingDeque<Packet> resyncQueue = new LinkedBlockingDeque<Packet>();
+	private final PacketLaneQueue resyncQueue = new PacketLaneQueue();
+
+	/**
+	 * Gets the outgoing packet lanes of this connection
+	 * @return packet lanes
+	 */
+	public PacketLaneQueue getPacketLanes() {
+		return resyncQueue;
+	}
 
 	public void queueOutputPacket(Packet packet) {
 		if (packet == null) {
 			return;
 		}
-		resyncQueue.addLast(packet);
+		resyncQueue.add(packet, false);
 		if (processingKick.get()) {
+			// Kicks may be processed off the main thread and by several threads at once
 			this.syncFlushPacketQueue(new MCCraftPacket[256]);
 		}
 	}
@@ -186,7 +197,7 @@ public class SpoutPlayerConnection extends PlayerConnection {
 			return;
 		}
 
-		resyncQueue.addFirst(packet);
+		resyncQueue.add(packet, true);
 	}
 
 	@Override
@@ -214,11 +225,11 @@ public class SpoutPlayerConnection extends PlayerConnection {
 	}
 
 	public void syncFlushPacketQueue(MCCraftPacket[] packetWrappers) {
-		while (!resyncQueue.isEmpty()) {
-			Packet p = resyncQueue.pollFirst();
-			if (p != null) {
-				syncedSendPacket(p, packetWrappers);
-			}
+		// Everything goes out when the player is being kicked, otherwise the UI and bulk lanes stop at their budget
+		boolean all = processingKick.get();
+		Packet p;
+		while ((p = resyncQueue.poll(all)) != null) {
+			syncedSendPacket(p, packetWrappers);
 		}
 	}
 
@@ -234,6 +245,10 @@ public class SpoutPlayerConnection extends PlayerConnection {
 		try {
 			if (!PacketListeners.canSend(getPlayer(), packet, packetWrappers, packetId)) {
 				return;
+			} else if (packet instanceof Packet51MapChunk && ((Packet51MapChunk) packet).c != 0 && chunkNetCache.isCacheEnabled() && CachedMapChunkPacket.isAvailable() && !PacketListeners.hasListeners(51)) {
+				// The cache runs when the packet is written, off the main thread
+				// It rebuilds the chunk from the uncompressed data, so it is skipped while listeners may edit the compressed data
+				super.sendPacket(new CachedMapChunkPacket((Packet51MapChunk) packet, chunkNetCache));
 			} else {
 				super.sendPacket(packet);
 			}
@@ -45,6 +45,7 @@ import org.getspout.spoutapi.Spout;
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.SpoutWorld;
 import org.getspout.spoutapi.block.SpoutChunk;
+import org.getspout.spoutapi.chunkstore.SimpleChunkDataManager;
 import org.getspout.spoutapi.material.CustomBlock;
 import org.getspout.spoutapi.material.MaterialData;
 
@@ -242,6 +243,7 @@ public class SpoutCraftChunk extends CraftChunk implements SpoutChunk {
 		int index = ((x & 0xF) << xBitShifts) | ((z & 0xF) << zBitShifts) | (y & worldHeightMinusOne);
 		short old = ids[index];
 		ids[index] = id;
+		getChunkDataManager().invalidateEncodedCustomBlocks(getWorld(), getX(), getZ());
 		return old;
 	}
 
@@ -284,6 +286,7 @@ public class SpoutCraftChunk extends CraftChunk implements SpoutChunk {
 		int index = ((x & 0xF) << xBitShifts) | ((z & 0xF) << zBitShifts) | (y & worldHeightMinusOne);
 		byte old = dats[index];
 		dats[index] = data;
+		getChunkDataManager().invalidateEncodedCustomBlocks(getWorld(), getX(), getZ());
 		return old;
 	}
 
@@ -296,4 +299,8 @@ public class SpoutCraftChunk extends CraftChunk implements SpoutChunk {
 		setCustomBlockData(x, y, z, data);
 		return MaterialData.getCustomBlock(old);
 	}
+
+	private static SimpleChunkDataManager getChunkDataManager() {
+		return (SimpleChunkDataManager) SpoutManager.getChunkDataManager();
+	}
 }
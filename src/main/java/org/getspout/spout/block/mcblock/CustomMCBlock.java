@@ -22,6 +22,7 @@ package org.getspout.spout.block.mcblock;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -420,92 +421,152 @@ public final class CustomMCBlock implements MethodInterceptor {
 		return null;
 	}
 
-	private final ConcurrentHashMap<Method, Method> fastMethodCache = new ConcurrentHashMap<Method, Method>(100);
+	// Resolved once per proxy method, cglib hands every proxy class its own Method instances
+	private static final ConcurrentHashMap<Method, Handler> handlers = new ConcurrentHashMap<Method, Handler>(256);
+
 	@Override
 	public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
-		Method m = fastMethodCache.get(method);
+		Handler handler = handlers.get(method);
+		if (handler == null) {
+			handler = resolveHandler(method, proxy);
+			Handler existing = handlers.putIfAbsent(method, handler);
+			if (existing != null) {
+				handler = existing;
+			}
+		}
+		return handler.invoke(this, args);
+	}
+
+	/**
+	 * Picks the handler for a proxy method, the checks on its name and parameters are made only here
+	 */
+	private Handler resolveHandler(Method method, MethodProxy proxy) throws NoSuchFieldException {
+		String name = method.getName();
+		Class<?>[] params = method.getParameterTypes();
+		// The fast class behind a method proxy only reaches public methods, the rest are called through reflection
+		MethodProxy fast = Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers()) ? proxy : null;
+
+		// Special cases
+		if (name.equals("getWrapped")) {
+			return new Handler(null, null) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) {
+					return block.getWrapped();
+				}
+			};
+		} else if (name.equals("setHardness")) {
+			final Field strength = Block.class.getDeclaredField("strength");
+			strength.setAccessible(true);
+			return new Handler(null, null) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws IllegalAccessException {
+					strength.set(block.wrapped, args[0]);
+					return null;
+				}
+			};
+		}
+
+		Method m = findRecursive(wrapped.getClass(), name, params);
 		if (m == null) {
-			// Special cases
-			if (method.getName().equals("getWrapped")) {
-				return getWrapped();
-			} else if (method.getName().equals("setHardness")) {
-				Field f = Block.class.getDeclaredField("strength");
-				f.setAccessible(true);
-				f.set(wrapped, args[0]);
-				return null;
-			} else {
-				m = findRecursive(wrapped.getClass(), method.getName(), method.getParameterTypes());
-		        if (m != null) {
-		        	m.setAccessible(true);
-		        	fastMethodCache.put(method, m);
-		        } else {
-		        	System.err.println("Unable to find method : " + method.getName() + " with: " + Arrays.toString(method.getParameterTypes()));	 
-		        	return null;
+			System.err.println("Unable to find method : " + name + " with: " + Arrays.toString(params));
+			return new Handler(null, null) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) {
+					return null;
 				}
-			}
+			};
 		}
+		m.setAccessible(true);
+
 		// Overridden methods
-		if (method.getName().equals("a") && Arrays.deepEquals(method.getParameterTypes(), new Class[] {IBlockAccess.class, int.class, int.class, int.class, int.class})) {
-			World world = (World) args[0];
-			int x = (Integer) args[1];
-			int y = (Integer) args[2];
-			int z = (Integer) args[3];
-			int face = (Integer) args[4];
-
-			org.getspout.spoutapi.material.CustomBlock block = getCustomBlock(world, x, y, z);
-			if (block != null) {
-				return block.isProvidingPowerTo(world.getWorld(), x, y, z, org.bukkit.craftbukkit.v1_6_R3.block.CraftBlock.notchToBlockFace(face));
-			}
-		} else if (method.getName().equals("c") && Arrays.deepEquals(method.getParameterTypes(), new Class[] {World.class, int.class, int.class, int.class, int.class})) {
-			World world = (World) args[0];
-			int x = (Integer) args[1];
-			int y = (Integer) args[2];
-			int z = (Integer) args[3];
-			int face = (Integer) args[4];
-			org.getspout.spoutapi.material.CustomBlock block = getCustomBlock(world, x, y, z);
-			if (block != null) {
-				return block.isProvidingPowerTo(world.getWorld(), x, y, z, org.bukkit.craftbukkit.v1_6_R3.block.CraftBlock.notchToBlockFace(face));
-			}
-		} else if (method.getName().equals("b") && Arrays.deepEquals(method.getParameterTypes(), new Class[] {World.class, int.class, int.class, int.class, Entity.class})) {
-			World world = (World) args[0];
-			int x = (Integer) args[1];
-			int y = (Integer) args[2];
-			int z = (Integer) args[3];
-			Entity e = (Entity) args[4];
-			org.getspout.spoutapi.material.CustomBlock block = getCustomBlock(world, x, y, z);
-			if (block != null) {
-				block.onEntityMoveAt(world.getWorld(), x, y, z, e.getBukkitEntity());
-				return null;
-			}
-		} else if (method.getName().equals("interact")) {
-			World world = (World) args[0];
-			int x = (Integer) args[1];
-			int y = (Integer) args[2];
-			int z = (Integer) args[3];
-			Entity human = (Entity) args[4];
-			org.getspout.spoutapi.material.CustomBlock block = getCustomBlock(world, x, y, z);
-			if (block != null && human instanceof EntityPlayer) {
-				return block.onBlockInteract(world.getWorld(), x, y, z, ((SpoutPlayer) human.getBukkitEntity()));
-			}
-		} else if (method.getName().equals("getDamage")) {
-			EntityHuman human = (EntityHuman) args[0];
-			World world = (World) args[1];
-			int x = (Integer) args[2];
-			int y = (Integer) args[3];
-			int z = (Integer) args[4];
-			org.getspout.spoutapi.material.CustomBlock block = getCustomBlock(world, x, y, z);
-			if (block != null) {
-				if (block instanceof org.getspout.spoutapi.material.CustomBlock) {
+		if (name.equals("a") && Arrays.equals(params, new Class[] {IBlockAccess.class, int.class, int.class, int.class, int.class})) {
+			return new Handler(m, fast) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+					if (args[0] instanceof World) {
+						World world = (World) args[0];
+						int x = (Integer) args[1];
+						int y = (Integer) args[2];
+						int z = (Integer) args[3];
+						org.getspout.spoutapi.material.CustomBlock custom = block.getCustomBlock(world, x, y, z);
+						if (custom != null) {
+							return custom.isProvidingPowerTo(world.getWorld(), x, y, z, org.bukkit.craftbukkit.v1_6_R3.block.CraftBlock.notchToBlockFace((Integer) args[4]));
+						}
+					}
+					return super.invoke(block, args);
+				}
+			};
+		} else if (name.equals("c") && Arrays.equals(params, new Class[] {World.class, int.class, int.class, int.class, int.class})) {
+			return new Handler(m, fast) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+					World world = (World) args[0];
+					int x = (Integer) args[1];
+					int y = (Integer) args[2];
+					int z = (Integer) args[3];
+					org.getspout.spoutapi.material.CustomBlock custom = block.getCustomBlock(world, x, y, z);
+					if (custom != null) {
+						return custom.isProvidingPowerTo(world.getWorld(), x, y, z, org.bukkit.craftbukkit.v1_6_R3.block.CraftBlock.notchToBlockFace((Integer) args[4]));
+					}
+					return super.invoke(block, args);
+				}
+			};
+		} else if (name.equals("b") && Arrays.equals(params, new Class[] {World.class, int.class, int.class, int.class, Entity.class})) {
+			return new Handler(m, fast) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+					World world = (World) args[0];
+					int x = (Integer) args[1];
+					int y = (Integer) args[2];
+					int z = (Integer) args[3];
+					org.getspout.spoutapi.material.CustomBlock custom = block.getCustomBlock(world, x, y, z);
+					if (custom != null) {
+						custom.onEntityMoveAt(world.getWorld(), x, y, z, ((Entity) args[4]).getBukkitEntity());
+						return null;
+					}
+					return super.invoke(block, args);
+				}
+			};
+		} else if (name.equals("interact")) {
+			return new Handler(m, fast) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+					World world = (World) args[0];
+					int x = (Integer) args[1];
+					int y = (Integer) args[2];
+					int z = (Integer) args[3];
+					Entity human = (Entity) args[4];
+					org.getspout.spoutapi.material.CustomBlock custom = block.getCustomBlock(world, x, y, z);
+					if (custom != null && human instanceof EntityPlayer) {
+						return custom.onBlockInteract(world.getWorld(), x, y, z, ((SpoutPlayer) human.getBukkitEntity()));
+					}
+					return super.invoke(block, args);
+				}
+			};
+		} else if (name.equals("getDamage")) {
+			return new Handler(m, fast) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+					EntityHuman human = (EntityHuman) args[0];
+					World world = (World) args[1];
+					int x = (Integer) args[2];
+					int y = (Integer) args[3];
+					int z = (Integer) args[4];
+					org.getspout.spoutapi.material.CustomBlock custom = block.getCustomBlock(world, x, y, z);
+					if (custom == null) {
+						return super.invoke(block, args);
+					}
 					SpoutPlayer player = (SpoutPlayer) human.getBukkitEntity();
 					float def;
 					SpoutItemStack inHand = player.getItemInHand() == null ? null : new SpoutItemStack(player.getItemInHand());
 					org.getspout.spoutapi.material.Material item = inHand.getMaterial();
 
-					float hardness = block.getHardness();
+					float hardness = custom.getHardness();
 					if (hardness <= 0F) {
-						return m.invoke(wrapped, args);
+						return super.invoke(block, args);
 					}
 
+					Block wrapped = block.wrapped;
 					def = (!human.a(wrapped) ? 1.0F / hardness / 100.0F : human.a(wrapped, false) / hardness / 30.0F); //TODO EntityHuman.a(Block, boolean) appears to not make any use of the flag variable...
 
 					if (!(item instanceof CustomItem)) {
@@ -518,32 +579,65 @@ public final class CustomMCBlock implements MethodInterceptor {
 
 					Tool tool = (Tool) item;
 
-					float modifier = tool.getStrengthModifier(block);
+					float modifier = tool.getStrengthModifier(custom);
 
 					return modifier / hardness / (modifier > 1F ? 30F : 100F);
 				}
+			};
+		} else if (name.equals("remove")) {
+			return new Handler(m, fast) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+					World world = (World) args[0];
+					int x = (Integer) args[1];
+					int y = (Integer) args[2];
+					int z = (Integer) args[3];
+					org.getspout.spoutapi.material.CustomBlock custom = block.getCustomBlock(world, x, y, z);
+					if (custom != null) {
+						custom.onBlockDestroyed(world.getWorld(), x, y, z);
+					}
+					return super.invoke(block, args);
+				}
+			};
+		} else if (name.equals("doPhysics")) {
+			return new Handler(m, fast) {
+				@Override
+				Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+					World world = (World) args[0];
+					int x = (Integer) args[1];
+					int y = (Integer) args[2];
+					int z = (Integer) args[3];
+					org.getspout.spoutapi.material.CustomBlock custom = block.getCustomBlock(world, x, y, z);
+					if (custom != null) {
+						custom.onNeighborBlockChange(world.getWorld(), x, y, z, (Integer) args[4]);
+					}
+					return super.invoke(block, args);
+				}
+			};
+		}
+
+		// Everything else goes straight to the wrapped block
+		return new Handler(m, fast);
+	}
+
+	/**
+	 * Handles calls to one method of a proxy, by default passing them on to the wrapped block
+	 */
+	private static class Handler {
+		private final Method target;
+		private final MethodProxy fastTarget;
+
+		Handler(Method target, MethodProxy fastTarget) {
+			this.target = target;
+			this.fastTarget = fastTarget;
+		}
+
+		Object invoke(CustomMCBlock block, Object[] args) throws Throwable {
+			if (fastTarget != null) {
+				return fastTarget.invoke(block.wrapped, args);
 			}
-		} else if (method.getName().equals("remove")) {
-			World world = (World) args[0];
-			int x = (Integer) args[1];
-			int y = (Integer) args[2];
-			int z = (Integer) args[3];
-			org.getspout.spoutapi.material.CustomBlock block = getCustomBlock(world, x, y, z);
-			if (block != null) {
-				block.onBlockDestroyed(world.getWorld(), x, y, z);
-			}
-		} else if (method.getName().equals("doPhysics")) {
-			World world = (World) args[0];
-			int x = (Integer) args[1];
-			int y = (Integer) args[2];
-			int z = (Integer) args[3];
-			int face = (Integer) args[4];
-			org.getspout.spoutapi.material.CustomBlock block = getCustomBlock(world, x, y, z);
-			if (block != null) {
-				block.onNeighborBlockChange(world.getWorld(), x, y, z, face);
-			}
+			return target.invoke(block.wrapped, args);
 		}
-			return m.invoke(wrapped, args);
 	}
 
 	private static Field getField(Class clazz, String fieldName) throws NoSuchFieldException {
@@ -29,10 +29,15 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.craftbukkit.v1_6_R3.CraftServer;
 import org.bukkit.entity.Player;
 
+import org.getspout.spout.PacketCompressionThread;
+import org.getspout.spout.PacketLane;
+import org.getspout.spout.PacketLaneQueue;
 import org.getspout.spout.Spout;
 import org.getspout.spout.config.ConfigReader;
+import org.getspout.spout.netcache.ChunkNetCache;
 import org.getspout.spout.player.SpoutCraftPlayer;
 import org.getspout.spoutapi.SpoutManager;
+import org.getspout.spoutapi.chunkstore.ChunkStore;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
 public class SpoutCommand implements CommandExecutor {
@@ -118,6 +123,25 @@ public class SpoutCommand implements CommandExecutor {
 			sender.sendMessage("Configuration for SpoutPlugin has been reloaded.");
 			return true;
 		}
+		if (c.equals("stats")) {
+			sender.sendMessage("[SpoutPlugin] Compression workers: " + PacketCompressionThread.getWorkerCount() + ", queued: " + PacketCompressionThread.getQueueDepth() + ", stalls: " + PacketCompressionThread.getStalls());
+			sender.sendMessage("[SpoutPlugin] Compressed packets: " + PacketCompressionThread.getPacketsCompressed() + ", time: " + (PacketCompressionThread.getCompressionNanos() / 1000000L) + " ms, bytes saved: " + PacketCompressionThread.getBytesSaved());
+			sender.sendMessage("[SpoutPlugin] Region files open: " + ChunkStore.getOpenRegionFiles() + "/" + ChunkStore.getMaxOpenRegionFiles() + ", hits: " + ChunkStore.getRegionFileHits() + ", misses: " + ChunkStore.getRegionFileMisses() + ", evictions: " + ChunkStore.getRegionFileEvictions());
+			sender.sendMessage("[SpoutPlugin] Chunk cache partitions sent: " + ChunkNetCache.getPartitionsSent() + ", skipped: " + ChunkNetCache.getPartitionsSkipped());
+			if (args.length > 1) {
+				Player player = Bukkit.getServer().getPlayer(args[1]);
+				if (player == null) {
+					sender.sendMessage("[SpoutPlugin] Player " + args[1] + " is not online");
+					return true;
+				}
+				PacketLaneQueue lanes = ((SpoutCraftPlayer) SpoutManager.getPlayer(player)).getPlayerConnection().getPacketLanes();
+				for (PacketLane lane : PacketLane.values()) {
+					sender.sendMessage("[SpoutPlugin] " + lane.name() + " lane: " + lanes.getDepth(lane) + " packets, " + lanes.getQueuedBytes(lane) + " bytes, oldest " + lanes.getOldestWait(lane) + " ms");
+				}
+				sender.sendMessage("[SpoutPlugin] Coalesced packets: " + lanes.getCoalesced());
+			}
+			return true;
+		}
 		if (c.equals("verify") && args.length > 1) {
 			sender.sendMessage("[SpoutPlugin] Temporarily setting the MOTD to: " + args[1]);
 			sender.sendMessage("[SpoutPlugin] It will return to its original setting in ~5 mins");
@@ -40,9 +40,16 @@ public class ConfigReader {
 	private static String kickMessage = "This server requires Spoutcraft! http://get.spout.org";
 
 	private static boolean chunkDataCache = true;
+	private static int chunkDataCacheSize = 16384;
 	private static boolean allowClientCache = true;
 	private static boolean teleportSmoothing = true;
 	private static boolean runDeadlockMonitor = false;
+	private static int compressionThreads = 0;
+	private static int regionFileCacheSize = 64;
+	private static int regionFileIdleTimeout = 300;
+	private static int uiPacketBudget = 32768;
+	private static int bulkPacketBudget = 65536;
+	private static int packetLaneBacklog = 1048576;
 
 	private static HashMap<String, List<Waypoint> > waypoints = new HashMap<String, List<Waypoint>>();
 
@@ -63,9 +70,16 @@ public class ConfigReader {
 		allowEntityLabelCheat = configuration.getBoolean("AllowEntityLabelCheat", false);
 		allowVoidFogCheat = configuration.getBoolean("AllowVoidFogCheat", false);*/
 		chunkDataCache = configuration.getBoolean("ChunkDataCache", true);
+		chunkDataCacheSize = configuration.getInt("ChunkDataCacheSize", 16384);
 		allowClientCache = configuration.getBoolean("AllowClientCache", true);
 		teleportSmoothing = configuration.getBoolean("TeleportSmoothing", true);
 		runDeadlockMonitor = configuration.getBoolean("DeadlockMonitor", false);
+		compressionThreads = configuration.getInt("CompressionThreads", 0);
+		regionFileCacheSize = configuration.getInt("RegionFileCacheSize", 64);
+		regionFileIdleTimeout = configuration.getInt("RegionFileIdleTimeout", 300);
+		uiPacketBudget = configuration.getInt("UIPacketBudget", 32768);
+		bulkPacketBudget = configuration.getInt("BulkPacketBudget", 65536);
+		packetLaneBacklog = configuration.getInt("PacketLaneBacklog", 1048576);
 
 		loadWaypoints(configuration);
 
@@ -159,6 +173,14 @@ public class ConfigReader {
 	public static boolean isChunkDataCache() {
 		return chunkDataCache;
 	}
+
+	/**
+	 * Gets the maximum number of chunk partition hashes remembered per player
+	 * @return chunk data cache size
+	 */
+	public static int getChunkDataCacheSize() {
+		return chunkDataCacheSize;
+	}
 	
 	public static boolean isAllowClientCache() {
 		return allowClientCache;
@@ -171,4 +193,52 @@ public class ConfigReader {
 	public static boolean runDeadlockMonitor() {
 		return runDeadlockMonitor;
 	}
+
+	/**
+	 * Gets the number of packet compression workers, 0 or less sizes the pool to the available cores
+	 * @return compression threads
+	 */
+	public static int getCompressionThreads() {
+		return compressionThreads;
+	}
+
+	/**
+	 * Gets the maximum number of chunk meta data region files kept open
+	 * @return region file cache size
+	 */
+	public static int getRegionFileCacheSize() {
+		return regionFileCacheSize;
+	}
+
+	/**
+	 * Gets the number of seconds an unused region file stays open
+	 * @return idle timeout in seconds
+	 */
+	public static int getRegionFileIdleTimeout() {
+		return regionFileIdleTimeout;
+	}
+
+	/**
+	 * Gets the number of bytes of widget and screen packets sent to a player per tick, 0 or less for no limit
+	 * @return UI packet budget
+	 */
+	public static int getUIPacketBudget() {
+		return uiPacketBudget;
+	}
+
+	/**
+	 * Gets the number of bytes of custom block and cache file packets sent to a player per tick, 0 or less for no limit
+	 * @return bulk packet budget
+	 */
+	public static int getBulkPacketBudget() {
+		return bulkPacketBudget;
+	}
+
+	/**
+	 * Gets the number of queued bytes after which the UI or bulk lane of a player is sent without its budget, 0 or less for no byte limit
+	 * @return packet lane backlog
+	 */
+	public static int getPacketLaneBacklog() {
+		return packetLaneBacklog;
+	}
 }
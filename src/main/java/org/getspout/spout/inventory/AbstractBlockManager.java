@@ -42,8 +42,10 @@ import org.getspout.spoutapi.inventory.MaterialManager;
 import org.getspout.spoutapi.material.CustomBlock;
 import org.getspout.spoutapi.material.Material;
 import org.getspout.spoutapi.material.MaterialData;
+import org.getspout.spoutapi.packet.PacketBatch;
 import org.getspout.spoutapi.packet.PacketBlockData;
 import org.getspout.spoutapi.packet.PacketItemName;
+import org.getspout.spoutapi.packet.PreparedPacket;
 import org.getspout.spoutapi.packet.SpoutPacket;
 import org.getspout.spoutapi.player.SpoutPlayer;
 import org.getspout.spoutapi.util.map.TIntPairFloatHashMap;
@@ -52,6 +54,7 @@ import org.getspout.spoutapi.util.map.TIntPairObjectHashMap;
 
 public abstract class AbstractBlockManager implements MaterialManager {
 	protected final TIntPairObjectHashMap<String> customNames = new TIntPairObjectHashMap<String>(100);
+	private PacketBatch namePackets = null;
 
 	protected final TIntPairFloatHashMap originalHardness = new TIntPairFloatHashMap();
 	protected final TIntPairFloatHashMap originalFriction = new TIntPairFloatHashMap();
@@ -62,6 +65,7 @@ public abstract class AbstractBlockManager implements MaterialManager {
 	@Override
 	public void reset() {
 		customNames.clear();
+		invalidateNamePackets();
 		for (Player player : Bukkit.getServer().getOnlinePlayers()) {
 			if (player instanceof SpoutCraftPlayer) {
 				if (((SpoutPlayer) player).isSpoutCraftEnabled()) {
@@ -73,16 +77,37 @@ public abstract class AbstractBlockManager implements MaterialManager {
 
 	public void onPlayerJoin(SpoutPlayer player) {
 		if ((player).isSpoutCraftEnabled()) {
+			PacketBatch packets = getNamePackets();
+			if (!packets.isEmpty()) {
+				(player).sendPacket(packets);
+			}
+		}
+	}
+
+	/**
+	 * Gets the custom item names sent to joining players, serialized once until a name changes
+	 * @return prepared item name packets
+	 */
+	private synchronized PacketBatch getNamePackets() {
+		if (namePackets == null) {
+			PacketBatch packets = new PacketBatch(customNames.size());
 			for (TLongObjectIterator<String> it = customNames.iterator(); it.hasNext();) {
 				it.advance();
-				(player).sendPacket(new PacketItemName(TIntPairHashSet.longToKey1(it.key()), (short) TIntPairHashSet.longToKey2(it.key()), it.value()));
+				packets.add(new PreparedPacket(new PacketItemName(TIntPairHashSet.longToKey1(it.key()), (short) TIntPairHashSet.longToKey2(it.key()), it.value())));
 			}
+			namePackets = packets;
 		}
+		return namePackets;
+	}
+
+	private synchronized void invalidateNamePackets() {
+		namePackets = null;
 	}
 
 	@Override
 	public void setItemName(Material item, String name) {
 		customNames.put(item.getRawId(), item.getRawData(), name);
+		invalidateNamePackets();
 		for (Player player : Bukkit.getServer().getOnlinePlayers()) {
 			if (player instanceof SpoutCraftPlayer) {
 				if (((SpoutPlayer) player).isSpoutCraftEnabled()) {
@@ -98,6 +123,7 @@ public abstract class AbstractBlockManager implements MaterialManager {
 		int data = item.getRawData();
 		if (customNames.containsKey(id, data)) {
 			customNames.remove(id, data);
+			invalidateNamePackets();
 			for (Player player : Bukkit.getServer().getOnlinePlayers()) {
 				if (player instanceof SpoutCraftPlayer) {
 					if (((SpoutPlayer) player).isSpoutCraftEnabled()) {
@@ -39,7 +39,7 @@ import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import org.getspout.spout.block.SpoutCraftBlock;
-import org.getspout.spout.player.SpoutCraftPlayer;
+import org.getspout.spoutapi.Spout;
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.block.SpoutChunk;
 import org.getspout.spoutapi.inventory.ItemMap;
@@ -51,9 +51,11 @@ import org.getspout.spoutapi.material.CustomBlock;
 import org.getspout.spoutapi.material.CustomItem;
 import org.getspout.spoutapi.material.Material;
 import org.getspout.spoutapi.material.MaterialData;
+import org.getspout.spoutapi.packet.PacketBatch;
 import org.getspout.spoutapi.packet.PacketCustomBlockChunkOverride;
 import org.getspout.spoutapi.packet.PacketCustomBlockOverride;
 import org.getspout.spoutapi.packet.PacketCustomMultiBlockOverride;
+import org.getspout.spoutapi.packet.PreparedPacket;
 import org.getspout.spoutapi.packet.SpoutPacket;
 import org.getspout.spoutapi.player.SpoutPlayer;
 import org.getspout.spoutapi.util.map.TIntPairObjectHashMap;
@@ -61,6 +63,8 @@ import org.getspout.spoutapi.util.map.TIntPairObjectHashMap;
 public class SimpleMaterialManager extends AbstractBlockManager implements MaterialManager {
 	private final TIntObjectHashMap<String> itemPlugin = new TIntObjectHashMap<String>();
 	private final HashMap<World, TIntPairObjectHashMap<BlockOverrides>> queuedChunkBlockOverrides = new HashMap<World, TIntPairObjectHashMap<BlockOverrides>>(10);
+	private PacketBatch materialPackets = null;
+	private int materialRevision = 0;
 
 	public static void disableFlintStackMix() {
 		try {
@@ -81,19 +85,59 @@ public class SimpleMaterialManager extends AbstractBlockManager implements Mater
 	@Override
 	public void onPlayerJoin(SpoutPlayer player) {
 		if (player.isSpoutCraftEnabled()) {
+			PacketBatch packets = getMaterialPackets();
+			if (!packets.isEmpty()) {
+				player.sendPacket(packets);
+			}
+		}
+		super.onPlayerJoin(player);
+	}
+
+	/**
+	 * Gets the custom blocks and items sent to joining players, serialized once for each revision of the custom materials.
+	 * <p/>
+	 * Materials can change what they write without changing the revision, so the cached packets are checked against a
+	 * fresh serialization and only the ones that differ are prepared again.
+	 * @return prepared material packets
+	 */
+	private synchronized PacketBatch getMaterialPackets() {
+		int revision = MaterialData.getCustomMaterialRevision();
+		if (materialPackets == null || materialRevision != revision) {
+			PacketBatch packets = new PacketBatch();
 			for (CustomBlock block : MaterialData.getCustomBlocks()) {
 				if (block instanceof SpoutPacket) {
-					player.sendPacket((SpoutPacket)block);
+					packets.add(new PreparedPacket((SpoutPacket)block));
 				}
 			}
 			for (CustomItem item : MaterialData.getCustomItems()) {
 				CustomBlock owner = MaterialData.getCustomBlock(item.getCustomId());
 				if (item instanceof SpoutPacket && owner == null) {
-					player.sendPacket((SpoutPacket)item);
+					packets.add(new PreparedPacket((SpoutPacket)item));
 				}
 			}
+			materialPackets = packets;
+			materialRevision = revision;
+		} else {
+			// The batch may still be queued for earlier players, so changes go into a copy
+			List<SpoutPacket> prepared = materialPackets.getPackets();
+			PacketBatch packets = null;
+			for (int i = 0; i < prepared.size(); i++) {
+				PreparedPacket packet = (PreparedPacket) prepared.get(i);
+				if (packets == null && !packet.isCurrent()) {
+					packets = new PacketBatch(prepared.size());
+					for (int j = 0; j < i; j++) {
+						packets.add(prepared.get(j));
+					}
+					packets.add(new PreparedPacket(packet.getPacket()));
+				} else if (packets != null) {
+					packets.add(packet.isCurrent() ? packet : new PreparedPacket(packet.getPacket()));
+				}
+			}
+			if (packets != null) {
+				materialPackets = packets;
+			}
 		}
-		super.onPlayerJoin(player);
+		return materialPackets;
 	}
 
 	@Override
@@ -248,30 +292,15 @@ public class SimpleMaterialManager extends AbstractBlockManager implements Mater
 				if (xCoords.size() > 128) {
 					int chunkX = xCoords.get(0) >> 4;
 					int chunkZ = zCoords.get(0) >> 4;
-					packet = new PacketCustomBlockChunkOverride(SpoutManager.getChunkDataManager().getCustomBlockIds(world, chunkX, chunkZ), SpoutManager.getChunkDataManager().getCustomBlockData(world, chunkX, chunkZ),chunkX, chunkZ);
+					packet = PacketCustomBlockChunkOverride.forChunk(world, chunkX, chunkZ);
 				} else {
 					packet = new PacketCustomMultiBlockOverride(xCoords, yCoords, zCoords, typeIds, data);
 				}
-
-				for (Player player : players) {
-					if (player instanceof SpoutCraftPlayer) {
-						SpoutCraftPlayer spc = (SpoutCraftPlayer) player;
-						if (spc.isSpoutCraftEnabled()) {
-							spc.sendPacket(packet);
-						}
-					}
-				}
+				Spout.getServer().broadcastPacket(packet, players);
 			} else {
 				for (int i = 0; i < xCoords.size(); i++) {
 					SpoutPacket packet = new PacketCustomBlockOverride(xCoords.get(i), yCoords.get(i), zCoords.get(i), typeIds.get(i), data.get(i));
-					for (Player player : players) {
-						if (player instanceof SpoutCraftPlayer) {
-							SpoutCraftPlayer spc = (SpoutCraftPlayer) player;
-							if (spc.isSpoutCraftEnabled()) {
-								spc.sendPacket(packet);
-							}
-						}
-					}
+					Spout.getServer().broadcastPacket(packet, players);
 				}
 			}
 		}
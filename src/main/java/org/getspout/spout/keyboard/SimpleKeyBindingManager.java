@@ -31,11 +31,14 @@ import org.getspout.spoutapi.keyboard.BindingExecutionDelegate;
 import org.getspout.spoutapi.keyboard.KeyBinding;
 import org.getspout.spoutapi.keyboard.KeyBindingManager;
 import org.getspout.spoutapi.keyboard.Keyboard;
+import org.getspout.spoutapi.packet.PacketBatch;
 import org.getspout.spoutapi.packet.PacketKeyBinding;
+import org.getspout.spoutapi.packet.PreparedPacket;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
 public class SimpleKeyBindingManager implements KeyBindingManager {
 	private HashMap<UUID, KeyBinding> bindings = new HashMap<UUID, KeyBinding>();
+	private PacketBatch bindingPackets = null;
 	@Override
 	public void registerBinding(String id, Keyboard defaultKey, String description, BindingExecutionDelegate callback, Plugin plugin) throws IllegalArgumentException {
 		if (searchBinding(id, plugin) != null) {
@@ -43,6 +46,9 @@ public class SimpleKeyBindingManager implements KeyBindingManager {
 		}
 		KeyBinding binding = new KeyBinding(id, defaultKey, description, plugin, callback);
 		bindings.put(binding.getUniqueId(), binding);
+		synchronized (this) {
+			bindingPackets = null;
+		}
 		for (Player p : Bukkit.getServer().getOnlinePlayers()) {
 			if (p instanceof SpoutPlayer) {
 				sendKeybinding((SpoutPlayer)p, binding);
@@ -95,8 +101,25 @@ public class SimpleKeyBindingManager implements KeyBindingManager {
 	}
 
 	public void onPlayerJoin(SpoutPlayer player) {
-		for (KeyBinding binding:bindings.values()) {
-			sendKeybinding(player, binding);
+		if (player.isSpoutCraftEnabled()) {
+			PacketBatch packets = getBindingPackets();
+			if (!packets.isEmpty()) {
+				player.sendPacket(packets);
+			}
+		}
+	}
+
+	/**
+	 * Gets the key bindings sent to joining players, serialized once until a binding is registered
+	 */
+	private synchronized PacketBatch getBindingPackets() {
+		if (bindingPackets == null) {
+			PacketBatch packets = new PacketBatch(bindings.size());
+			for (KeyBinding binding:bindings.values()) {
+				packets.add(new PreparedPacket(new PacketKeyBinding(binding)));
+			}
+			bindingPackets = packets;
 		}
+		return bindingPackets;
 	}
 }
@@ -42,6 +42,7 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
 import org.bukkit.event.player.PlayerPickupItemEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.event.player.PlayerTeleportEvent.TeleportCause;
 import org.bukkit.inventory.ItemStack;
@@ -327,6 +328,7 @@ public class SpoutPlayerListener implements Listener {
 	@EventHandler(priority = EventPriority.LOWEST)
 	public void onPlayerQuit(PlayerQuitEvent event) {
 		Player player = event.getPlayer();
+		((SimplePlayerChunkMap) SpoutManager.getPlayerChunkMap()).onPlayerQuit(player);
 		synchronized(Spout.getInstance().getOnlinePlayers()) {
 			Iterator<SpoutPlayer> i = Spout.getInstance().getOnlinePlayers().iterator();
 			while (i.hasNext()) {
@@ -338,6 +340,20 @@ public class SpoutPlayerListener implements Listener {
 		}
 	}
 
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerRespawn(PlayerRespawnEvent event) {
+		// The respawned entity is only in place once the event has finished
+		final Player player = event.getPlayer();
+		Bukkit.getServer().getScheduler().scheduleSyncDelayedTask(Spout.getInstance(), new Runnable() {
+			@Override
+			public void run() {
+				if (player.isOnline()) {
+					((SimplePlayerChunkMap) SpoutManager.getPlayerChunkMap()).indexPlayer(player);
+				}
+			}
+		}, 1);
+	}
+
 	@EventHandler(priority = EventPriority.LOWEST)
 	public void onPlayerDrop(PlayerDropItemEvent e) {
 		SpoutItemStack sis = new SpoutItemStack(e.getItemDrop().getItemStack());
@@ -383,6 +399,9 @@ class PostWorldTeleport implements Runnable {
 
 	@Override
 	public void run() {
+		if (player.isOnline()) {
+			((SimplePlayerChunkMap) SpoutManager.getPlayerChunkMap()).indexPlayer(player);
+		}
 		player.updateAppearance(player);
 		player.updateWaypoints();
 	}
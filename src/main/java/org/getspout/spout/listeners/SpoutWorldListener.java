@@ -52,7 +52,7 @@ public class SpoutWorldListener implements Listener {
 			}
 
 			SimpleChunkDataManager dm = (SimpleChunkDataManager)SpoutManager.getChunkDataManager();
-			dm.loadChunk(event.getChunk());
+			dm.prefetchChunk(event.getChunk());
 		}
 	}
 	
@@ -0,0 +1,137 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spout.netcache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import net.minecraft.server.v1_6_R3.Connection;
+import net.minecraft.server.v1_6_R3.Packet;
+import net.minecraft.server.v1_6_R3.Packet51MapChunk;
+
+/**
+ * Sends a map chunk packet through a player's chunk cache.
+ * <p/>
+ * The partitions the client already has are replaced by their hashes and the chunk is compressed again. This happens
+ * when the packet is written, on the connection's writer thread, so the main thread only wraps the packet.
+ * <p/>
+ * The chunk is rebuilt from the uncompressed data, so edits to the compressed data would be lost. Map chunk packets
+ * are therefore not sent through the cache while packet listeners are registered for them.
+ */
+public class CachedMapChunkPacket extends Packet {
+	private static volatile boolean mapped = false;
+	private static Field inflatedBuffer = null;
+
+	private final Packet51MapChunk packet;
+	private final ChunkNetCache cache;
+
+	public CachedMapChunkPacket(Packet51MapChunk packet, ChunkNetCache cache) {
+		this.packet = packet;
+		this.cache = cache;
+		this.lowPriority = packet.lowPriority;
+	}
+
+	/**
+	 * Checks if map chunk packets can be sent through the cache
+	 * @return true if the packet is registered and the chunk data can be read
+	 */
+	public static boolean isAvailable() {
+		return mapped && inflatedBuffer != null;
+	}
+
+	/**
+	 * Gives this packet the id of the map chunk packet it wraps, outgoing only
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public static void addClassMapping() {
+		try {
+			Field field = Packet.class.getDeclaredField("a");
+			field.setAccessible(true);
+			Map classToId = (Map) field.get(null);
+			classToId.put(CachedMapChunkPacket.class, 51);
+
+			inflatedBuffer = Packet51MapChunk.class.getDeclaredField("inflatedBuffer");
+			inflatedBuffer.setAccessible(true);
+			mapped = true;
+		} catch (Exception e) {
+			System.out.println("[SpoutPlugin] Unable to hook map chunk packets, the chunk cache is disabled");
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void a(DataInput input) throws IOException {
+		throw new IOException("Cached map chunk packets can only be sent");
+	}
+
+	@Override
+	public void a(DataOutput output) throws IOException {
+		byte[] inflated;
+		try {
+			inflated = (byte[]) inflatedBuffer.get(packet);
+		} catch (IllegalAccessException e) {
+			inflated = null;
+		}
+		if (inflated == null) {
+			packet.a(output);
+			return;
+		}
+
+		byte[] cached = cache.handle(inflated);
+		byte[] buffer = new byte[cached.length + 100];
+		int size = 0;
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		try {
+			deflater.setInput(cached);
+			deflater.finish();
+			while (!deflater.finished()) {
+				if (size == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length << 1);
+				}
+				size += deflater.deflate(buffer, size, buffer.length - size);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		output.writeInt(packet.a);
+		output.writeInt(packet.b);
+		output.writeBoolean(packet.e);
+		output.writeShort((short) (packet.c & 0xFFFF));
+		output.writeShort((short) (packet.d & 0xFFFF));
+		output.writeInt(size);
+		output.write(buffer, 0, size);
+	}
+
+	@Override
+	public void handle(Connection connection) {
+		packet.handle(connection);
+	}
+
+	@Override
+	public int a() {
+		return packet.a();
+	}
+}
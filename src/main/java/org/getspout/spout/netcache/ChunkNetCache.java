@@ -22,25 +22,39 @@ package org.getspout.spout.netcache;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
-
-import com.google.common.collect.Sets;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.getspout.spout.config.ConfigReader;
 
 public class ChunkNetCache {
-	private final AtomicReference<byte[]> partitionCache = new AtomicReference<byte[]>();
-	private final Set<Long> hashSet;
+	private static final AtomicLong partitionsSent = new AtomicLong();
+	private static final AtomicLong partitionsSkipped = new AtomicLong();
+
+	private final PartitionHashSet hashSet;
 	private volatile boolean cacheEnabled = false;
 
 	public ChunkNetCache() {
-		this(Sets.newSetFromMap(new ConcurrentHashMap<Long, Boolean>()));
+		this(ConfigReader.getChunkDataCacheSize());
+	}
+
+	public ChunkNetCache(int capacity) {
+		this.hashSet = new PartitionHashSet(capacity);
+	}
+
+	/**
+	 * Gets the number of chunk partitions sent in full to caching clients
+	 * @return partitions sent
+	 */
+	public static long getPartitionsSent() {
+		return partitionsSent.get();
 	}
 
-	public ChunkNetCache(Set<Long> hashSet) {
-		this.hashSet = hashSet;
+	/**
+	 * Gets the number of chunk partitions replaced by their hash because the client already had them
+	 * @return partitions skipped
+	 */
+	public static long getPartitionsSkipped() {
+		return partitionsSkipped.get();
 	}
 
 	public boolean isCacheEnabled() {
@@ -64,12 +78,6 @@ public class ChunkNetCache {
 	}
 
 	public byte[] handle(byte[] inflatedBuffer) {
-		byte[] partition = partitionCache.getAndSet(null);
-
-		if (partition == null) {
-			partition = new byte[2048];
-		}
-
 		if (!cacheEnabled) {
 			return inflatedBuffer;
 		}
@@ -84,21 +92,27 @@ public class ChunkNetCache {
 
 		byte[] newBuffer = new byte[newLength];
 
+		// Partitions are hashed in place, the whole buffer hash is combined from the partition sums
+		long crc = 1;
+		int skipped = 0;
 		for (int i = 0; i < segments; i++) {
-			PartitionChunk.copyFromChunkData(inflatedBuffer, i, partition, inflatedBuffer.length);
-			long hash = PartitionChunk.hash(partition);
+			int start = i << 11;
+			int length = Math.min(2048, dataLength - start);
+			long sum = PartitionChunk.sum(inflatedBuffer, start, length);
+			crc = crc * PartitionChunk.pow(length) + sum;
+			long hash = PartitionChunk.partitionHash(sum, length);
 			if (hashSet.add(hash)) {
-				PartitionChunk.copyToChunkData(newBuffer, i, partition, dataLength);
+				System.arraycopy(inflatedBuffer, start, newBuffer, start, length);
 			} else {
 				PartitionChunk.setHash(newBuffer, i, hash, dataLength);
+				skipped++;
 			}
 		}
-		long crc = PartitionChunk.hash(inflatedBuffer);
+		partitionsSent.addAndGet(segments - skipped);
+		partitionsSkipped.addAndGet(skipped);
 		PartitionChunk.setHash(newBuffer, 0, crc, newLength - 13);
 		PartitionChunk.setInt(newBuffer, 0, dataLength, newLength - 5);
 
-		partitionCache.set(partition);
-
 		return newBuffer;
 	}
 }
@@ -92,16 +92,75 @@ public class PartitionChunk {
 		chunkData[p++] = (byte) (hash >> 0);
 	}
 
+	// Powers of 33, the multiplier of the hash, up to a full partition
+	private static final long[] POWERS = new long[2049];
+	static {
+		POWERS[0] = 1;
+		for (int i = 1; i < POWERS.length; i++) {
+			POWERS[i] = POWERS[i - 1] * 33;
+		}
+	}
+	private static final long P2 = POWERS[2];
+	private static final long P3 = POWERS[3];
+	private static final long P4 = POWERS[4];
+	private static final long P5 = POWERS[5];
+	private static final long P6 = POWERS[6];
+	private static final long P7 = POWERS[7];
+	private static final long P8 = POWERS[8];
+
 	public static long hash(final byte[] a) {
 		return hash(a, 0, a.length);
 	}
 
 	public static long hash(final byte[] a, final int off, final int len) {
-		long h = 1;
+		return pow(len) + sum(a, off, len);
+	}
+
+	/**
+	 * Gets the hash of a partition without copying it, equal to {@link #hash(byte[])} of the partition zero padded to 2048 bytes
+	 * @param sum of the partition bytes, from {@link #sum(byte[], int, int)}
+	 * @param len of the partition, at most 2048
+	 * @return partition hash
+	 */
+	public static long partitionHash(long sum, int len) {
+		return POWERS[2048] + sum * POWERS[2048 - len];
+	}
+
+	/**
+	 * Sums a range of bytes with powers of 33, the hash with a starting value of 0.
+	 * <p/>
+	 * Sums of consecutive ranges combine as sum(a + b) = sum(a) * 33^len(b) + sum(b).
+	 */
+	public static long sum(final byte[] a, final int off, final int len) {
+		long h = 0;
+		int i = off;
 		int end = off + len;
-		for (int i = off; i < end; i++) {
-			h += (h << 5) + (long) a[i];
+		// 8 bytes per step, h * 33^8 + a[i] * 33^7 + ... + a[i + 7]
+		for (int end8 = off + (len & ~7); i < end8; i += 8) {
+			h = h * P8 + a[i] * P7 + a[i + 1] * P6 + a[i + 2] * P5 + a[i + 3] * P4 + a[i + 4] * P3 + a[i + 5] * P2 + a[i + 6] * 33 + a[i + 7];
+		}
+		for (; i < end; i++) {
+			h = h * 33 + a[i];
 		}
 		return h;
 	}
+
+	/**
+	 * Gets 33 to the given power, modulo 2^64
+	 */
+	public static long pow(int exponent) {
+		if (exponent < POWERS.length) {
+			return POWERS[exponent];
+		}
+		long result = 1;
+		long base = 33;
+		while (exponent != 0) {
+			if ((exponent & 1) != 0) {
+				result *= base;
+			}
+			base *= base;
+			exponent >>>= 1;
+		}
+		return result;
+	}
 }
@@ -0,0 +1,108 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spout.netcache;
+
+/**
+ * A bounded set of partition hashes.
+ * <p/>
+ * Hashes are kept in small buckets of primitive longs. When a bucket is full the least recently used entry of the
+ * bucket is replaced, using a clock over the bucket's reference bits.
+ */
+public class PartitionHashSet {
+	private static final int WAYS = 8;
+	private static final byte EMPTY = 0;
+	private static final byte PRESENT = 1;
+	private static final byte REFERENCED = 2;
+
+	private final long[] keys;
+	private final byte[] state;
+	private final byte[] hands;
+	private final int shift;
+	private int size = 0;
+
+	public PartitionHashSet(int capacity) {
+		int buckets = 2;
+		while (buckets * WAYS < capacity && buckets < (1 << 24)) {
+			buckets <<= 1;
+		}
+		keys = new long[buckets * WAYS];
+		state = new byte[buckets * WAYS];
+		hands = new byte[buckets];
+		shift = 32 - Integer.numberOfTrailingZeros(buckets);
+	}
+
+	/**
+	 * Adds the hash to the set, possibly replacing an older hash
+	 * @param hash to add
+	 * @return true if the hash was not in the set
+	 */
+	public synchronized boolean add(long hash) {
+		int bucket = ((int) (hash ^ (hash >>> 32)) * 0x9E3779B9) >>> shift;
+		int start = bucket * WAYS;
+		int free = -1;
+		for (int i = start; i < start + WAYS; i++) {
+			if (state[i] == EMPTY) {
+				if (free < 0) {
+					free = i;
+				}
+			} else if (keys[i] == hash) {
+				state[i] = REFERENCED;
+				return false;
+			}
+		}
+		if (free < 0) {
+			free = evict(bucket, start);
+		} else {
+			size++;
+		}
+		keys[free] = hash;
+		state[free] = PRESENT;
+		return true;
+	}
+
+	private int evict(int bucket, int start) {
+		int hand = hands[bucket];
+		while (state[start + hand] == REFERENCED) {
+			state[start + hand] = PRESENT;
+			hand = (hand + 1) & (WAYS - 1);
+		}
+		hands[bucket] = (byte) ((hand + 1) & (WAYS - 1));
+		return start + hand;
+	}
+
+	public synchronized boolean contains(long hash) {
+		int bucket = ((int) (hash ^ (hash >>> 32)) * 0x9E3779B9) >>> shift;
+		int start = bucket * WAYS;
+		for (int i = start; i < start + WAYS; i++) {
+			if (state[i] != EMPTY && keys[i] == hash) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return keys.length;
+	}
+}
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 
 import net.minecraft.server.v1_6_R3.Connection;
@@ -34,7 +35,10 @@ import org.getspout.spout.SpoutPlayerConnection;
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.io.SpoutInputStream;
 import org.getspout.spoutapi.io.SpoutOutputStream;
+import org.getspout.spoutapi.packet.CompressiblePacket;
+import org.getspout.spoutapi.packet.PacketBatch;
 import org.getspout.spoutapi.packet.PacketType;
+import org.getspout.spoutapi.packet.PreparedPacket;
 import org.getspout.spoutapi.packet.SpoutPacket;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
@@ -63,6 +67,31 @@ public class CustomPacket extends Packet {
 		return 8;
 	}
 
+	/**
+	 * Serializes the wrapped packet now, so its size is known before it is written
+	 * <p/>
+	 * Packets that still have to be compressed are left alone.
+	 * @return size of the payload in bytes, 0 if it is not known yet
+	 */
+	public int prepare() {
+		if (packet instanceof PacketBatch) {
+			int size = 0;
+			for (SpoutPacket p : ((PacketBatch) packet).getPackets()) {
+				if (p instanceof PreparedPacket) {
+					size += ((PreparedPacket) p).getData().length + 8;
+				}
+			}
+			return size;
+		}
+		if (packet == null || (packet instanceof CompressiblePacket && !((CompressiblePacket) packet).isCompressed())) {
+			return 0;
+		}
+		if (!(packet instanceof PreparedPacket)) {
+			packet = new PreparedPacket(packet);
+		}
+		return ((PreparedPacket) packet).getData().length + 8;
+	}
+
 	@Override
 	public void a(DataInput input) throws IOException {
 		int packetId = -1;
@@ -106,27 +135,52 @@ public class CustomPacket extends Packet {
 		}
 	}
 
-	SpoutOutputStream stream = new SpoutOutputStream();
 	@Override
 	public void a(DataOutput output) throws IOException {
-		if (packet == null) {
+		if (packet == null || (packet instanceof PacketBatch && ((PacketBatch) packet).isEmpty())) {
 			output.writeShort(-1);
 			output.writeShort(-1);
 			output.writeInt(0);
 			return;
 		}
+
+		if (packet instanceof PacketBatch) {
+			// Every packet after the first gets its own custom packet id, the same as if it was sent alone
+			List<SpoutPacket> packets = ((PacketBatch) packet).getPackets();
+			for (int i = 0; i < packets.size(); i++) {
+				if (i > 0) {
+					output.write(n());
+				}
+				writePacket(output, packets.get(i));
+			}
+			return;
+		}
+
+		writePacket(output, packet);
+	}
+
+	private static void writePacket(DataOutput output, SpoutPacket packet) throws IOException {
 		//System.out.println("Writing Packet Data for " + packet.getPacketType());
 		output.writeShort(packet.getPacketType().getId());
 		output.writeShort(packet.getVersion());
 
-		stream.getRawBuffer().clear();
-		packet.writeData(stream);
-		ByteBuffer buffer = stream.getRawBuffer();
-		byte[] data = new byte[buffer.capacity() - buffer.remaining()];
-		System.arraycopy(buffer.array(), 0, data, 0, data.length);
+		if (packet instanceof PreparedPacket) {
+			// Shared frame, write the prepared bytes as they are
+			byte[] data = ((PreparedPacket) packet).getData();
+			output.writeInt(data.length);
+			output.write(data, 0, data.length);
+			return;
+		}
 
-		output.writeInt(data.length);
-		output.write(data, 0, data.length);
+		SpoutOutputStream stream = SpoutOutputStream.obtain();
+		try {
+			packet.writeData(stream);
+			int length = stream.getPosition();
+			output.writeInt(length);
+			output.write(stream.getRawBuffer().array(), 0, length);
+		} finally {
+			stream.release();
+		}
 	}
 
 	@Override
@@ -27,7 +27,6 @@ import net.minecraft.server.v1_6_R3.Packet;
 import org.bukkit.entity.Player;
 
 import org.getspout.spout.packet.standard.MCCraftPacket;
-import org.getspout.spout.packet.standard.MCCraftPacketUnknown;
 import org.getspout.spoutapi.packet.listener.PacketListener;
 import org.getspout.spoutapi.packet.standard.MCPacket;
 
@@ -68,7 +67,7 @@ public class PacketListeners {
 	public static boolean canSend(Player player, Packet packet, MCCraftPacket[] packetWrappers, int packetId) {
 		AtomicReference<PacketListener[]> listenerReference = (AtomicReference<PacketListener[]>) listeners[packetId];
 		PacketListener[] listenerArray = listenerReference.get();
-		if (listenerArray != null) {
+		if (listenerArray != null && listenerArray.length > 0) {
 			MCPacket wrapper = wrapPacket(packet, packetWrappers, packetId);
 			for (PacketListener listener : listenerArray) {
 				if (!listener.checkPacket(player, wrapper)) {
@@ -79,22 +78,13 @@ public class PacketListeners {
 		return true;
 	}
 
-	private static MCCraftPacket unknownPacket = new MCCraftPacketUnknown();
-
 	private static MCPacket wrapPacket(Packet packet, MCCraftPacket[] packetWrappers, int packetId) {
 		MCCraftPacket packetWrapper = packetWrappers[packetId];
 		if (packetWrapper == null) {
-			packetWrapper = MCCraftPacket.newInstance(packetId, packet);
+			packetWrapper = MCCraftPacket.newWrapper(packetId);
 			packetWrappers[packetId] = packetWrapper;
-		} else {
-			packetWrapper.setPacket(packet, packetId);
-		}
-
-		if (packetWrapper == null) {
-			packetWrapper = unknownPacket;
-			packetWrapper.setPacket(packet, packetId);
 		}
-
+		packetWrapper.setPacket(packet, packetId);
 		return packetWrapper;
 	}
 
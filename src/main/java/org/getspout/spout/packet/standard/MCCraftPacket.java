@@ -19,13 +19,9 @@
  */
 package org.getspout.spout.packet.standard;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-
 import net.minecraft.server.v1_6_R3.Packet;
 
 import org.getspout.spoutapi.packet.standard.MCPacket;
-import org.getspout.spoutapi.packet.standard.MCPacket51MapChunkUncompressed;
 
 public class MCCraftPacket implements MCPacket {
 	Packet packet;
@@ -44,84 +40,114 @@ public class MCCraftPacket implements MCPacket {
 		return packet;
 	}
 
-	private static Class<?>[] MCPackets = new Class<?>[257];
-	private static Class<?>[] packets = new Class<?>[257];
-
-	static {
-		MCPackets[0] = MCCraftPacket0KeepAlive.class;
-		MCPackets[3] = MCCraftPacket3Chat.class;
-		MCPackets[17] = MCCraftPacket17EntityLocationAction.class;
-		MCPackets[18] = MCCraftPacket18ArmAnimation.class;
-		MCPackets[51] = MCCraftPacket51MapChunk.class;
-		MCPackets[103] = MCCraftPacket103SetSlot.class;
+	/**
+	 * Creates a new instance of a wrapper or packet class
+	 */
+	private interface Factory<T> {
+		public T create();
+	}
 
-		MCPackets[256] = MCPacket51MapChunkUncompressed.class;
+	@SuppressWarnings("unchecked")
+	private static final Factory<MCCraftPacket>[] wrappers = new Factory[257];
+	@SuppressWarnings("unchecked")
+	private static final Factory<Packet>[] packets = new Factory[257];
 
-		packets[0] = net.minecraft.server.v1_6_R3.Packet0KeepAlive.class;
-		packets[3] = net.minecraft.server.v1_6_R3.Packet3Chat.class;
-		packets[17] = net.minecraft.server.v1_6_R3.Packet17EntityLocationAction.class;
-		packets[18] = net.minecraft.server.v1_6_R3.Packet18ArmAnimation.class;
-		packets[51] = net.minecraft.server.v1_6_R3.Packet51MapChunk.class;
-		packets[103] = net.minecraft.server.v1_6_R3.Packet103SetSlot.class;
+	static {
+		wrappers[0] = new Factory<MCCraftPacket>() {
+			public MCCraftPacket create() {
+				return new MCCraftPacket0KeepAlive();
+			}
+		};
+		wrappers[3] = new Factory<MCCraftPacket>() {
+			public MCCraftPacket create() {
+				return new MCCraftPacket3Chat();
+			}
+		};
+		wrappers[17] = new Factory<MCCraftPacket>() {
+			public MCCraftPacket create() {
+				return new MCCraftPacket17EntityLocationAction();
+			}
+		};
+		wrappers[18] = new Factory<MCCraftPacket>() {
+			public MCCraftPacket create() {
+				return new MCCraftPacket18ArmAnimation();
+			}
+		};
+		wrappers[51] = new Factory<MCCraftPacket>() {
+			public MCCraftPacket create() {
+				return new MCCraftPacket51MapChunk();
+			}
+		};
+		wrappers[103] = new Factory<MCCraftPacket>() {
+			public MCCraftPacket create() {
+				return new MCCraftPacket103SetSlot();
+			}
+		};
 
-		packets[256] = net.minecraft.server.v1_6_R3.Packet51MapChunk.class;
+		packets[0] = new Factory<Packet>() {
+			public Packet create() {
+				return new net.minecraft.server.v1_6_R3.Packet0KeepAlive();
+			}
+		};
+		packets[3] = new Factory<Packet>() {
+			public Packet create() {
+				return new net.minecraft.server.v1_6_R3.Packet3Chat();
+			}
+		};
+		packets[17] = new Factory<Packet>() {
+			public Packet create() {
+				return new net.minecraft.server.v1_6_R3.Packet17EntityLocationAction();
+			}
+		};
+		packets[18] = new Factory<Packet>() {
+			public Packet create() {
+				return new net.minecraft.server.v1_6_R3.Packet18ArmAnimation();
+			}
+		};
+		packets[51] = new Factory<Packet>() {
+			public Packet create() {
+				return new net.minecraft.server.v1_6_R3.Packet51MapChunk();
+			}
+		};
+		packets[103] = new Factory<Packet>() {
+			public Packet create() {
+				return new net.minecraft.server.v1_6_R3.Packet103SetSlot();
+			}
+		};
 	}
 
-	private static final Object[] blank = new Class[0];
-
 	public static MCCraftPacket newInstance(Packet packet) {
 		return newInstance(packet.n(), packet);
 	}
 
 	public static MCCraftPacket newInstance(int packetId, Packet packet) {
-		try {
-			@SuppressWarnings("unchecked")
-			Class<? extends MCCraftPacket> mcp = (Class<? extends MCCraftPacket>) MCPackets[packetId];
-			if (mcp == null) {
-				return null;
-			}
-			Constructor<? extends MCCraftPacket> c = mcp.getConstructor(new Class[]{});
-			MCCraftPacket r = c.newInstance(blank);
-			r.setPacket(packet, packetId);
-			return r;
-		} catch (SecurityException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchMethodException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalArgumentException e) {
-			throw new RuntimeException(e);
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
-		} catch (InvocationTargetException e) {
-			throw new RuntimeException(e);
+		Factory<MCCraftPacket> factory = packetId >= 0 && packetId < wrappers.length ? wrappers[packetId] : null;
+		if (factory == null) {
+			return null;
 		}
+		MCCraftPacket r = factory.create();
+		r.setPacket(packet, packetId);
+		return r;
 	}
 
 	public static MCCraftPacket newInstance(int packetId) {
-		try {
-			@SuppressWarnings("unchecked")
-			Class<? extends Packet> packetClass = (Class<? extends Packet>) packets[packetId];
-			if (packetClass == null) {
-				return null;
-			}
-			Constructor<? extends Packet> c = packetClass.getConstructor(new Class[]{});
-			Packet r = c.newInstance(blank);
+		Factory<Packet> factory = packetId >= 0 && packetId < packets.length ? packets[packetId] : null;
+		if (factory == null) {
+			return null;
+		}
+		return newInstance(packetId, factory.create());
+	}
 
-			return newInstance(packetId, r);
-		} catch (SecurityException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchMethodException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalArgumentException e) {
-			throw new RuntimeException(e);
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
-		} catch (InvocationTargetException e) {
-			throw new RuntimeException(e);
+	/**
+	 * Creates an empty wrapper for the packet id, to be reused with {@link #setPacket(Packet, int)}
+	 * @param packetId of the packets to wrap
+	 * @return wrapper, a {@link MCCraftPacketUnknown} if the id has no wrapper of its own
+	 */
+	public static MCCraftPacket newWrapper(int packetId) {
+		Factory<MCCraftPacket> factory = packetId >= 0 && packetId < wrappers.length ? wrappers[packetId] : null;
+		if (factory == null) {
+			return new MCCraftPacketUnknown();
 		}
+		return factory.create();
 	}
 }
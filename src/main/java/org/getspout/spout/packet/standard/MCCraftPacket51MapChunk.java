@@ -26,6 +26,19 @@ import net.minecraft.server.v1_6_R3.Packet51MapChunk;
 import org.getspout.spoutapi.packet.standard.MCPacket51MapChunk;
 
 public class MCCraftPacket51MapChunk extends MCCraftPacket implements MCPacket51MapChunk {
+	private static final Field buffer;
+
+	static {
+		Field field = null;
+		try {
+			field = Packet51MapChunk.class.getDeclaredField("buffer");
+			field.setAccessible(true);
+		} catch (Exception e) {
+			System.out.println(e.toString());
+		}
+		buffer = field;
+	}
+
 	@Override
 	public Packet51MapChunk getPacket() {
 		return (Packet51MapChunk) packet;
@@ -53,9 +66,10 @@ public class MCCraftPacket51MapChunk extends MCCraftPacket implements MCPacket51
 
 	@Override
 	public byte[] getCompressedChunkData() {
+		if (buffer == null) {
+			return null;
+		}
 		try {
-			Field buffer = Packet51MapChunk.class.getDeclaredField("buffer");
-			buffer.setAccessible(true);
 			return (byte[]) buffer.get(getPacket());
 		} catch (Exception e) {
 			System.out.println(e.toString());
@@ -30,10 +30,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -43,12 +44,14 @@ import org.getspout.spout.Spout;
 import org.getspout.spout.config.ConfigReader;
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.io.CRCStore;
-import org.getspout.spoutapi.io.CRCStore.URLCheck;
 import org.getspout.spoutapi.io.CRCStoreRunnable;
+import org.getspout.spoutapi.io.FileCRCStore;
 import org.getspout.spoutapi.io.FileUtil;
 import org.getspout.spoutapi.packet.PacketCacheDeleteFile;
 import org.getspout.spoutapi.packet.PacketPreCacheCompleted;
 import org.getspout.spoutapi.packet.PacketPreCacheFile;
+import org.getspout.spoutapi.packet.PreparedPacket;
+import org.getspout.spoutapi.packet.SpoutPacket;
 import org.getspout.spoutapi.player.FileManager;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
@@ -56,73 +59,83 @@ public class SimpleFileManager implements FileManager {
 	private Map<Plugin,  List<File>> preLoginCache = new HashMap<Plugin,  List<File>>();
 	private Map<Plugin,  List<String>> preLoginUrlCache = new HashMap<Plugin,  List<String>>();
 	private Map<Plugin, List<String>> cachedFiles = new HashMap<Plugin,  List<String>>();
+	// Prepared pre-cache packets of local files, keyed on plugin and path
+	private final ConcurrentHashMap<String, PreCachePacket> preCachePackets = new ConcurrentHashMap<String, PreCachePacket>();
 	private static final String[] validExtensions = {"txt", "yml", "xml", "png", "jpg", "ogg", "midi", "wav", "zip"};
 
 	public void onPlayerJoin(final SpoutPlayer player) {
 		if (player.isSpoutCraftEnabled() && ConfigReader.isAllowClientCache()) {
+			byte[] buffer = new byte[8192];
 			Iterator<Entry<Plugin, List<File>>> i = preLoginCache.entrySet().iterator();
 			while (i.hasNext()) {
 				Entry<Plugin, List<File>> next = i.next();
 				for (File file : next.getValue()) {
-					long crc = -1;
-					try {
-						byte[] data = new byte[FileUtils.readFileToByteArray(file).length];
-						crc = FileUtil.getCRC(file, data);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					if (crc !=-1) {
-						player.sendPacket(new PacketPreCacheFile(next.getKey().getDescription().getName(), file.getPath(), crc, false));
+					SpoutPacket packet = getPreCachePacket(next.getKey().getDescription().getName(), file, buffer);
+					if (packet != null) {
+						player.sendPacket(packet);
 					}
 				}
 			}
-			LinkedList<Thread> urlThreads = new LinkedList<Thread>();
-			Iterator<Entry<Plugin, List<String>>> j = preLoginUrlCache.entrySet().iterator();
-			while (j.hasNext()) {
-				final Entry<Plugin, List<String>> next = j.next();
-				for (final String url : next.getValue()) {
-					URLCheck urlCheck = new URLCheck(url, new byte[4096], new CRCStoreRunnable() {
-						Long CRC;
-
-						public void setCRC(Long CRC) {
-							this.CRC = CRC;
-						}
+			final List<String[]> urls = new ArrayList<String[]>();
+			for (Entry<Plugin, List<String>> next : preLoginUrlCache.entrySet()) {
+				for (String url : next.getValue()) {
+					urls.add(new String[] {next.getKey().getDescription().getName(), url});
+				}
+			}
+			if (urls.isEmpty()) {
+				player.sendPacket(new PacketPreCacheCompleted());
+				return;
+			}
+			// Pre-caching is complete once the last URL of this player is resolved
+			final AtomicInteger remaining = new AtomicInteger(urls.size());
+			for (final String[] url : urls) {
+				CRCStore.getCRCAsync(url[1], new CRCStoreRunnable() {
+					Long CRC;
+
+					public void setCRC(Long CRC) {
+						this.CRC = CRC;
+					}
 
-						public void run() {
-							player.sendPacket(new PacketPreCacheFile(next.getKey().getDescription().getName(), url, CRC, true));
+					public void run() {
+						player.sendPacket(new PacketPreCacheFile(url[0], url[1], CRC, true));
+						if (remaining.decrementAndGet() == 0) {
+							player.sendPacket(new PacketPreCacheCompleted());
 						}
-					});
-					urlCheck.setName(url);
-					urlCheck.start();
-					urlThreads.add(urlCheck);
-				}
+					}
+				});
 			}
-			new URLCheckJoin(urlThreads, player).start();
 		}
 	}
 
-	private class URLCheckJoin extends Thread {
-		private final List<Thread> threads;
-		private final SpoutPlayer player;
-
-		public URLCheckJoin(List<Thread> threads, SpoutPlayer player) {
-			this.threads = threads;
-			this.player = player;
+	/**
+	 * Gets the pre-cache packet for a local file, which is prepared once and reused until the CRC of the file changes
+	 * @return packet, or null if the CRC of the file could not be computed
+	 */
+	private SpoutPacket getPreCachePacket(String plugin, File file, byte[] buffer) {
+		long crc = FileCRCStore.getCRC(file, buffer);
+		if (crc == 0) {
+			return null;
 		}
+		String key = getPreCacheKey(plugin, file);
+		PreCachePacket cached = preCachePackets.get(key);
+		if (cached == null || cached.crc != crc) {
+			cached = new PreCachePacket(crc, new PreparedPacket(new PacketPreCacheFile(plugin, file.getPath(), crc, false)));
+			preCachePackets.put(key, cached);
+		}
+		return cached.packet;
+	}
 
-		public void run() {
-			while (!threads.isEmpty()) {
-				Iterator<Thread> i = threads.iterator();
-				while (i.hasNext()) {
-					Thread t = i.next();
-					try {
-						t.join();
-						i.remove();
-					} catch (InterruptedException ie) {
-					}
-				}
-			}
-			player.sendPacket(new PacketPreCacheCompleted());
+	private static String getPreCacheKey(String plugin, File file) {
+		return plugin + File.pathSeparator + file.getPath();
+	}
+
+	private static class PreCachePacket {
+		private final long crc;
+		private final SpoutPacket packet;
+
+		PreCachePacket(long crc, SpoutPacket packet) {
+			this.crc = crc;
+			this.packet = packet;
 		}
 	}
 
@@ -264,18 +277,11 @@ public class SimpleFileManager implements FileManager {
 			throw new IllegalArgumentException("Invalid File! Files must not be null and must exist!");
 		}
 		if (addToPreLoginCache(plugin, file)) {
-			String fileName = FileUtil.getFileName(file.getPath());
-			long crc = -1;
-			try {
-				byte[] data = new byte[FileUtils.readFileToByteArray(file).length];
-				crc = FileUtil.getCRC(file, data);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			if (crc !=-1) {
+			SpoutPacket packet = getPreCachePacket(plugin.getDescription().getName(), file, new byte[8192]);
+			if (packet != null) {
 				for (SpoutPlayer player : SpoutManager.getOnlinePlayers()) {
 					if (player.isSpoutCraftEnabled()) {
-						player.sendPacket(new PacketPreCacheFile(plugin.getDescription().getName(), file.getPath(), crc, false));
+						player.sendPacket(packet);
 					}
 				}
 			}
@@ -296,7 +302,7 @@ public class SimpleFileManager implements FileManager {
 		}
 
 		if (addToPreLoginCache(plugin, fileUrl)) {
-			URLCheck urlCheck = new URLCheck(fileUrl, new byte[4096], new CRCStoreRunnable() {
+			CRCStore.getCRCAsync(fileUrl, new CRCStoreRunnable() {
 				Long CRC;
 
 				public void setCRC(Long CRC) {
@@ -311,7 +317,6 @@ public class SimpleFileManager implements FileManager {
 					}
 				}
 			});
-			urlCheck.start();
 		}
 		return false;
 	}
@@ -368,6 +373,7 @@ public class SimpleFileManager implements FileManager {
 				String fileName = FileUtil.getFileName(next.getPath());
 				if (fileName.equals(file)) {
 					i.remove();
+					preCachePackets.remove(getPreCacheKey(plugin.getDescription().getName(), next));
 				}
 			}
 		}
@@ -23,6 +23,7 @@ import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
 
@@ -40,6 +41,13 @@ public class SimplePlayerChunkMap implements PlayerChunkMap {
 	PlayerInformation globalInfo = new SimplePlayerInformation();
 	TIntObjectHashMap<WeakReference<Entity>> entityIdMap = new TIntObjectHashMap<WeakReference<Entity>>();
 	Map<UUID, WeakReference<Entity>> entityUniqueIdMap = new HashMap<UUID, WeakReference<Entity>>();
+	// Online players by entity id and unique id, kept up to date on join, quit, respawn and world change.
+	// Lookups that miss fall back to the online player list without adding to the index, so a player that is
+	// still quitting is never indexed again.
+	private final ConcurrentHashMap<Integer, SpoutPlayer> playerIdMap = new ConcurrentHashMap<Integer, SpoutPlayer>();
+	private final ConcurrentHashMap<UUID, SpoutPlayer> playerUniqueIdMap = new ConcurrentHashMap<UUID, SpoutPlayer>();
+	// Entity id each player is indexed under, so the entry for an old id can be removed once it changes
+	private final ConcurrentHashMap<UUID, Integer> playerEntityIds = new ConcurrentHashMap<UUID, Integer>();
 
 	@Override
 	public SpoutPlayer getPlayer(Player player) {
@@ -48,6 +56,10 @@ public class SimplePlayerChunkMap implements PlayerChunkMap {
 
 	@Override
 	public SpoutPlayer getPlayer(UUID id) {
+		SpoutPlayer indexed = playerUniqueIdMap.get(id);
+		if (indexed != null && indexed.getUniqueId().equals(id)) {
+			return getPlayer(indexed);
+		}
 		for (Player player : Bukkit.getServer().getOnlinePlayers()) {
 			if (player.getUniqueId().equals(id)) {
 				return getPlayer(player);
@@ -58,6 +70,10 @@ public class SimplePlayerChunkMap implements PlayerChunkMap {
 
 	@Override
 	public SpoutPlayer getPlayer(int entityId) {
+		SpoutPlayer indexed = playerIdMap.get(entityId);
+		if (indexed != null && indexed.getEntityId() == entityId) {
+			return getPlayer(indexed);
+		}
 		for (Player player : Bukkit.getServer().getOnlinePlayers()) {
 			if (player.getEntityId() == entityId) {
 				return getPlayer(player);
@@ -66,6 +82,48 @@ public class SimplePlayerChunkMap implements PlayerChunkMap {
 		return null;
 	}
 
+	/**
+	 * Adds the player to the lookup index, replacing any previous entry including the one under an old entity id
+	 * @param player to index
+	 * @return the spout player
+	 */
+	public SpoutPlayer indexPlayer(Player player) {
+		SpoutPlayer spoutPlayer = getPlayer(player);
+		UUID uniqueId = spoutPlayer.getUniqueId();
+		int entityId = spoutPlayer.getEntityId();
+		playerIdMap.put(entityId, spoutPlayer);
+		playerUniqueIdMap.put(uniqueId, spoutPlayer);
+		Integer previous = playerEntityIds.put(uniqueId, entityId);
+		if (previous != null && previous.intValue() != entityId) {
+			removeIndexedId(previous, uniqueId);
+		}
+		return spoutPlayer;
+	}
+
+	/**
+	 * Removes the player from the lookup index
+	 * @param player to remove
+	 */
+	public void unindexPlayer(Player player) {
+		UUID uniqueId = player.getUniqueId();
+		Integer indexed = playerEntityIds.remove(uniqueId);
+		if (indexed != null) {
+			removeIndexedId(indexed, uniqueId);
+		}
+		removeIndexedId(player.getEntityId(), uniqueId);
+		playerUniqueIdMap.remove(uniqueId);
+	}
+
+	/**
+	 * Removes the entry of an entity id, as long as it still belongs to the given player
+	 */
+	private void removeIndexedId(int entityId, UUID uniqueId) {
+		SpoutPlayer indexed = playerIdMap.get(entityId);
+		if (indexed != null && indexed.getUniqueId().equals(uniqueId)) {
+			playerIdMap.remove(entityId, indexed);
+		}
+	}
+
 	@Override
 	public PlayerInformation getPlayerInfo(Player player) {
 		PlayerInformation info = infoMap.get(player.getName());
@@ -80,16 +138,25 @@ public class SimplePlayerChunkMap implements PlayerChunkMap {
 		if (getPlayerInfo(player) == null) {
 			infoMap.put(player.getName(), new SimplePlayerInformation());
 		}
+		indexPlayer(player);
+	}
+
+	public void onPlayerQuit(Player player) {
+		unindexPlayer(player);
 	}
 
 	public void onPluginEnable() {
 		for (Player player : Bukkit.getServer().getOnlinePlayers()) {
 			infoMap.put(player.getName(), new SimplePlayerInformation());
+			indexPlayer(player);
 		}
 	}
 
 	public void onPluginDisable() {
 		infoMap.clear();
+		playerIdMap.clear();
+		playerUniqueIdMap.clear();
+		playerEntityIds.clear();
 	}
 
 	@Override
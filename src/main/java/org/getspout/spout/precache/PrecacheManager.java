@@ -20,6 +20,8 @@
 package org.getspout.spout.precache;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -35,6 +37,7 @@ import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.FileUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 
@@ -42,6 +45,7 @@ import org.getspout.spout.Spout;
 import org.getspout.spout.player.SimpleFileManager;
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.block.design.BlockDesign;
+import org.getspout.spoutapi.io.FileCRCStore;
 import org.getspout.spoutapi.io.FileUtil;
 import org.getspout.spoutapi.material.CustomBlock;
 import org.getspout.spoutapi.material.MaterialData;
@@ -65,7 +69,10 @@ public class PrecacheManager {
 	public static void onPluginEnabled(Plugin plugin) {
 		Bukkit.getServer().getLogger().info("[SpoutPlugin] Initializing precache for " + plugin.getName());
 
+		long start = System.nanoTime();
 		boolean changed = false;
+		int designsWritten = 0;
+		byte[] buffer = new byte[8192];
 
 		File cacheFolder = new File(Spout.getInstance().getDataFolder(), "precache");
 		if (!cacheFolder.exists()) {
@@ -83,36 +90,36 @@ public class PrecacheManager {
 				do {
 					if (block.getBlockDesign(i) != null) {
 						BlockDesign design = block.getBlockDesign(i);
-						long beforeCRC = -1;
 						File target = new File(getPluginCacheFolder(plugin), String.valueOf(i0) + ".sbd");
 
-						if (!target.getParentFile().exists()) {
-							target.getParentFile().mkdirs();
-						}
-
-						if (target.exists()) {
-							beforeCRC = FileUtil.getCRC(target,  new byte[(int) target.length()]);
-							target.delete();
-						}
-
+						// Serialize and hash in memory, the file is only written when its contents changed
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
 						try {
-							DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
-
+							DataOutputStream out = new DataOutputStream(bytes);
 							out.writeShort((short)block.getCustomId());
 							out.writeByte(i);
 							design.write(out);
-							out.flush();
 							out.close();
-
 						} catch (IOException e) {
 							e.printStackTrace();
 						}
+						byte[] data = bytes.toByteArray();
+
+						long beforeCRC = target.exists() ? FileCRCStore.getCRC(target, buffer) : -1;
+						long newCRC = FileUtil.getCRC(new ByteArrayInputStream(data), buffer);
 
-						if (target.exists()) {
-							long newCRC = FileUtil.getCRC(target,  new byte[(int) target.length()]);
-							if (newCRC != beforeCRC) {
+						if (newCRC != beforeCRC) {
+							if (!target.getParentFile().exists()) {
+								target.getParentFile().mkdirs();
+							}
+							try {
+								FileUtils.writeByteArrayToFile(target, data);
+								FileCRCStore.setCRC(target, newCRC);
 								changed = true;
+								designsWritten++;
 								Bukkit.getLogger().info("[SpoutPlugin] Block Design Cache Updated: " + block.getName() + " " + String.valueOf(i));
+							} catch (IOException e) {
+								e.printStackTrace();
 							}
 						}
 
@@ -127,7 +134,7 @@ public class PrecacheManager {
 			for (File file : fileCaches) {
 				File target = new File(getPluginCacheFolder(plugin), file.getName());
 
-				if (FileUtil.getCRC(target, new byte[(int) target.length()]) == FileUtil.getCRC(file, new byte[(int) file.length()])) {
+				if (target.exists() && FileCRCStore.getCRC(target, buffer) == FileCRCStore.getCRC(file, buffer)) {
 					continue;
 				}
 
@@ -135,6 +142,7 @@ public class PrecacheManager {
 
 				try {
 					FileUtil.copyFileMkdirs(file, target);
+					FileCRCStore.invalidate(target);
 					changed = true;
 				} catch (IOException e) {
 					e.printStackTrace();
@@ -186,21 +194,26 @@ public class PrecacheManager {
 			}
 		}
 
-		if (changed) {
+		File zip = getPluginCacheZip(plugin);
+		if (changed || !zip.exists()) {
 			// Rebuild the zip
 			try {
 				buildPrecacheZip(plugin);
 			} catch (IOException e) {
 				e.printStackTrace();
 				return;
+			} finally {
+				FileCRCStore.invalidate(zip);
 			}
 		}
 
-		File zip = getPluginCacheZip(plugin);
 		if (zip.exists()) {
-			long crc = FileUtil.getCRC(zip, new byte[(int) zip.length()]);
+			long crc = FileCRCStore.getCRC(zip, buffer);
 			plugins.put(plugin, crc);
 		}
+
+		long millis = (System.nanoTime() - start) / 1000000L;
+		Bukkit.getLogger().info("[SpoutPlugin] Precache for " + plugin.getName() + " ready in " + millis + " ms, " + designsWritten + " block designs updated" + (changed ? ", zip rebuilt" : ""));
 	}
 
 	public static File getPluginCacheZip(Plugin plugin) {
@@ -234,11 +247,12 @@ public class PrecacheManager {
 		}
 
 		FileOutputStream fos = new FileOutputStream(zip);
-		ZipOutputStream zos = new ZipOutputStream(fos);
+		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos, 65536));
 
+		byte[] buf = new byte[65536];
 		for (File fileToCache : cacheFiles) {
 			if (!fileToCache.isDirectory()) {
-				addFileToZip(fileToCache, zos);
+				addFileToZip(fileToCache, zos, buf);
 			}
 		}
 
@@ -247,13 +261,19 @@ public class PrecacheManager {
 	}
 
 	public static void addFileToZip(File file, ZipOutputStream zip) throws IOException  {
-		byte[] buf = new byte[1024];
+		addFileToZip(file, zip, new byte[65536]);
+	}
+
+	private static void addFileToZip(File file, ZipOutputStream zip, byte[] buf) throws IOException  {
 		int len;
 		FileInputStream in = new FileInputStream(file);
-		zip.putNextEntry(new ZipEntry(file.getName()));
-		while ((len = in.read(buf)) > 0) {
-			zip.write(buf, 0, len);
+		try {
+			zip.putNextEntry(new ZipEntry(file.getName()));
+			while ((len = in.read(buf)) > 0) {
+				zip.write(buf, 0, len);
+			}
+		} finally {
+			in.close();
 		}
-		in.close();
 	}
 }
@@ -21,6 +21,8 @@ package org.getspout.spoutapi;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -60,6 +62,8 @@ import org.bukkit.plugin.messaging.Messenger;
 import org.bukkit.scheduler.BukkitScheduler;
 import org.bukkit.scoreboard.ScoreboardManager;
 
+import org.getspout.spoutapi.packet.PreparedPacket;
+import org.getspout.spoutapi.packet.SpoutPacket;
 import org.getspout.spoutapi.player.EntitySkinType;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
@@ -148,6 +152,35 @@ public class SpoutServer implements Server {
 		}
 	}
 
+	/**
+	 * Sends the packet to every online player using Spoutcraft.
+	 * <p/>
+	 * The packet is serialized and compressed once, and the result is shared between all of the players.
+	 * @param packet to send
+	 * @return the prepared packet that was sent
+	 */
+	public PreparedPacket broadcastPacket(SpoutPacket packet) {
+		return broadcastPacket(packet, Arrays.asList(getOnlinePlayers()));
+	}
+
+	/**
+	 * Sends the packet to each of the given players that is using Spoutcraft.
+	 * <p/>
+	 * The packet is serialized and compressed once, and the result is shared between all of the players.
+	 * @param packet to send
+	 * @param players to send the packet to
+	 * @return the prepared packet that was sent
+	 */
+	public PreparedPacket broadcastPacket(SpoutPacket packet, Collection<? extends Player> players) {
+		PreparedPacket prepared = packet instanceof PreparedPacket ? (PreparedPacket) packet : new PreparedPacket(packet);
+		for (Player player : players) {
+			if (player instanceof SpoutPlayer && ((SpoutPlayer) player).isSpoutCraftEnabled()) {
+				((SpoutPlayer) player).sendPacket(prepared);
+			}
+		}
+		return prepared;
+	}
+
 	@Override
 	public boolean addRecipe(Recipe recipe) {
 		return server.addRecipe(recipe);
@@ -19,18 +19,29 @@
  */
 package org.getspout.spoutapi.chunkstore;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OptionalDataException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map.Entry;
 import java.util.UUID;
 
 import gnu.trove.iterator.TIntObjectIterator;
 
+import org.bukkit.World;
+
 import org.getspout.spoutapi.Spout;
+import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.SpoutWorld;
+import org.getspout.spoutapi.WorldManager;
 import org.getspout.spoutapi.chunkstore.Utils.SerializedData;
 import org.getspout.spoutapi.inventory.ItemMap;
 import org.getspout.spoutapi.inventory.MaterialManager;
@@ -54,19 +65,36 @@ public class ChunkMetaData implements Serializable {
 	private byte[] customBlockData = null;
 	// Storage for local block data
 	private TByteShortByteKeyedObjectHashMap<HashMap<String, Serializable>> blockData;
-	private static final int CURRENT_VERSION = 4;
+	private static final int CURRENT_VERSION = 5;
+	// Marks records written by the Java serialization format used up to version 4
 	private static final int MAGIC_NUMBER = 0xEA5EDEBB;
+	// Marks records written by the binary format used from version 5
+	private static final int FORMAT_MAGIC = 0x53504D44;
+	private static final int FLAG_BLOCK_IDS = 1;
+	private static final int FLAG_BLOCK_DATA = 2;
 	transient private boolean dirty = false;
 	// Quais-final, need to be set in serialization
 	transient private int worldHeight;
 	transient private int worldHeightMinusOne;
 	transient private int xBitShifts;
 	transient private int zBitShifts;
-	transient private ItemMap worldItemMap;
+	transient private volatile ItemMap worldItemMap;
 	transient private ItemMap serverItemMap;
 	transient private boolean conversionNeeded;
+	// Custom blocks encoded for PacketCustomBlockChunkOverride, null until requested or after a change
+	transient private volatile byte[] encodedCustomBlocks;
+	// Bumped on every change to the custom blocks, so encodings of older contents are not cached
+	transient private volatile int customBlocksRevision;
 
 	ChunkMetaData(UUID worldId, ItemMap worldItemMap, int cx, int cz) {
+		this(worldId, Spout.getServer().getWorld(worldId), worldItemMap, cx, cz);
+	}
+
+	private ChunkMetaData(UUID worldId, SpoutWorld world, ItemMap worldItemMap, int cx, int cz) {
+		this(worldId, worldItemMap, cx, cz, world != null ? world.getMaxHeight() : 128, world != null ? world.getXBitShifts() : 11, world != null ? world.getZBitShifts() : 7);
+	}
+
+	private ChunkMetaData(UUID worldId, ItemMap worldItemMap, int cx, int cz, int worldHeight, int xBitShifts, int zBitShifts) {
 		blockData = new TByteShortByteKeyedObjectHashMap<HashMap<String, Serializable>>(100);
 		chunkData = new HashMap<String, Serializable>();
 
@@ -74,11 +102,9 @@ public class ChunkMetaData implements Serializable {
 		this.cz = cz;
 		this.worldUid = worldId;
 
-		SpoutWorld world = Spout.getServer().getWorld(this.worldUid);
-
-		this.worldHeight = world != null ? world.getMaxHeight() : 128;
-		this.xBitShifts = world != null ? world.getXBitShifts() : 11;
-		this.zBitShifts = world != null ? world.getZBitShifts() : 7;
+		this.worldHeight = worldHeight;
+		this.xBitShifts = xBitShifts;
+		this.zBitShifts = zBitShifts;
 		worldHeightMinusOne = worldHeight - 1;
 
 		this.worldItemMap = worldItemMap;
@@ -123,7 +149,7 @@ public class ChunkMetaData implements Serializable {
 		Serializable serial = chunkData.remove(id);
 		if (serial != null) {
 			dirty = true;
-			return serial;
+			return resolve(serial);
 		}
 		return null;
 	}
@@ -175,6 +201,7 @@ public class ChunkMetaData implements Serializable {
 	 */
 	public void setCustomBlockIds(short[] ids) {
 		customBlockIds = ids;
+		customBlocksChanged();
 		setDirty(true);
 	}
 
@@ -184,9 +211,53 @@ public class ChunkMetaData implements Serializable {
 
 	public void setCustomBlockData(byte[] rots) {
 		customBlockData = rots;
+		customBlocksChanged();
 		setDirty(true);
 	}
 
+	/**
+	 * Gets the custom blocks of this chunk as encoded for a PacketCustomBlockChunkOverride, if they are cached
+	 * @return encoded custom blocks, or null if they have changed since they were last encoded
+	 */
+	public byte[] getEncodedCustomBlocks() {
+		return encodedCustomBlocks;
+	}
+
+	/**
+	 * Gets the revision of the custom blocks of this chunk, which changes whenever they are altered
+	 * @return revision
+	 */
+	public int getCustomBlocksRevision() {
+		return customBlocksRevision;
+	}
+
+	/**
+	 * Caches the encoded custom blocks, unless the custom blocks changed since the given revision
+	 * @param encoded custom blocks
+	 * @param revision of the custom blocks that were encoded
+	 */
+	public void setEncodedCustomBlocks(byte[] encoded, int revision) {
+		if (customBlocksRevision == revision) {
+			encodedCustomBlocks = encoded;
+			// A change that raced the store above must not be left behind a stale encoding
+			if (customBlocksRevision != revision) {
+				encodedCustomBlocks = null;
+			}
+		}
+	}
+
+	/**
+	 * Drops the cached encoding of the custom blocks, this must be called after the arrays are altered in place
+	 */
+	public void invalidateEncodedCustomBlocks() {
+		customBlocksChanged();
+	}
+
+	private void customBlocksChanged() {
+		customBlocksRevision++;
+		encodedCustomBlocks = null;
+	}
+
 	public Serializable removeBlockData(String id, int x, int y, int z) {
 		if (id.equals(MaterialManager.blockIdString)) {
 			if (customBlockIds != null) {
@@ -195,6 +266,7 @@ public class ChunkMetaData implements Serializable {
 				if (old != 0) {
 					dirty = true;
 					customBlockIds[key] = 0;
+					customBlocksChanged();
 				}
 				return old;
 			}
@@ -208,7 +280,7 @@ public class ChunkMetaData implements Serializable {
 						blockData.remove(x, y, z);
 					}
 				}
-				return old;
+				return resolve(old);
 			}
 		}
 		return null;
@@ -247,6 +319,7 @@ public class ChunkMetaData implements Serializable {
 			}
 			int key = ((x & 0xF) << xBitShifts) | ((z & 0xF) << zBitShifts) | (y & worldHeightMinusOne);
 			customBlockIds[key] = ((Integer) o).shortValue();
+			customBlocksChanged();
 			dirty = true;
 		} else {
 			HashMap<String, Serializable> localBlockData = blockData.get(x, y, z);
@@ -261,51 +334,206 @@ public class ChunkMetaData implements Serializable {
 		return o;
 	}
 
-	private void writeObject(ObjectOutputStream out) throws IOException {
-		out.writeInt(MAGIC_NUMBER);
-		out.writeInt(CURRENT_VERSION);
+	/**
+	 * Writes this chunk's data using the binary chunk meta data format.
+	 * <p/>
+	 * Custom block ids are stored as a raw array of world ids, the keys of chunk and block data are written once to a
+	 * string table and block positions are packed into variable length ints.
+	 * <p/>
+	 * The item maps are not saved here, that is done once per save pass by the chunk data manager.
+	 * @param out to write to
+	 * @param translation from server ids to world ids, or null to create one for this chunk
+	 */
+	void write(DataOutputStream out, IdTranslationTable translation) throws IOException {
+		int flags = 0;
+		if (customBlockIds != null) {
+			flags |= FLAG_BLOCK_IDS;
+		}
+		if (customBlockData != null) {
+			flags |= FLAG_BLOCK_DATA;
+		}
 
+		out.writeInt(FORMAT_MAGIC);
+		out.writeByte(CURRENT_VERSION);
+		out.writeByte(flags);
 		out.writeLong(worldUid.getLeastSignificantBits());
 		out.writeLong(worldUid.getMostSignificantBits());
 		out.writeInt(cx);
 		out.writeInt(cz);
+
 		if (customBlockIds != null) {
-			out.writeBoolean(true);
-			for (int i = 0; i < (16 * 16 * worldHeight); i++) {
-				Integer worldId = worldItemMap.convertFrom(this.serverItemMap, customBlockIds[i]);
-				if (worldId == null) {
-					worldId = 0;
+			if (translation == null || !translation.isFor(serverItemMap, worldItemMap)) {
+				translation = new IdTranslationTable(serverItemMap, worldItemMap);
+			}
+			byte[] raw = new byte[customBlockIds.length * 2];
+			ShortBuffer worldIds = ByteBuffer.wrap(raw).asShortBuffer();
+			for (int i = 0; i < customBlockIds.length; i++) {
+				worldIds.put(translation.translate(customBlockIds[i]));
+			}
+			Utils.writeVarInt(out, customBlockIds.length);
+			out.write(raw);
+		}
+		if (customBlockData != null) {
+			Utils.writeVarInt(out, customBlockData.length);
+			out.write(customBlockData);
+		}
+
+		// String table for the data keys
+		HashMap<String, Integer> keyIndex = new HashMap<String, Integer>();
+		ArrayList<String> keys = new ArrayList<String>();
+		for (String key : chunkData.keySet()) {
+			indexKey(key, keyIndex, keys);
+		}
+		TIntObjectIterator<HashMap<String, Serializable>> i = blockData.iterator();
+		int blocks = 0;
+		while (i.hasNext()) {
+			i.advance();
+			if (i.value() != null) {
+				for (String key : i.value().keySet()) {
+					indexKey(key, keyIndex, keys);
 				}
-				out.writeShort(worldId);
+				blocks++;
 			}
-			worldItemMap.save();
-			serverItemMap.save();
-		} else {
-			out.writeBoolean(false);
 		}
-		out.writeInt(blockData != null ? blockData.size() : 0);
-		if (blockData != null) {
-			TIntObjectIterator<HashMap<String, Serializable>> i = blockData.iterator();
-			while (i.hasNext()) {
-				i.advance();
+		Utils.writeVarInt(out, keys.size());
+		for (String key : keys) {
+			out.writeUTF(key);
+		}
+
+		writeEntries(out, chunkData, keyIndex);
+
+		Utils.writeVarInt(out, blocks);
+		i = blockData.iterator();
+		while (i.hasNext()) {
+			i.advance();
+			if (i.value() != null) {
 				int key = i.key();
-				byte x = TByteShortByteKeyedMap.getXFromKey(key);
-				short y = TByteShortByteKeyedMap.getYFromKey(key);
-				byte z = TByteShortByteKeyedMap.getZFromKey(key);
-				out.writeByte(x);
-				out.writeShort(y);
-				out.writeByte(z);
-				writeMap(out, i.value());
+				int x = TByteShortByteKeyedMap.getXFromKey(key) & 0xF;
+				int y = TByteShortByteKeyedMap.getYFromKey(key) & 0xFFFF;
+				int z = TByteShortByteKeyedMap.getZFromKey(key) & 0xF;
+				Utils.writeVarInt(out, (y << 8) | (x << 4) | z);
+				writeEntries(out, i.value(), keyIndex);
 			}
 		}
-		if (customBlockData != null) {
-			out.writeBoolean(true);
-			out.write(customBlockData);
-		} else {
-			out.writeBoolean(false);
+	}
+
+	/**
+	 * Reads chunk data written by {@link #write(DataOutputStream, IdTranslationTable)}.
+	 * <p/>
+	 * Chunk and block data values are kept in their serialized form until they are first requested.
+	 * <p/>
+	 * This is safe to call from outside the main thread, the world item map must be set before the data is used.
+	 * @param in to read from
+	 * @param world the chunk is in
+	 * @return chunk data
+	 */
+	static ChunkMetaData read(DataInputStream in, World world) throws IOException {
+		if (in.readInt() != FORMAT_MAGIC) {
+			throw new IOException("Unknown chunk meta data format");
+		}
+		int version = in.readUnsignedByte();
+		if (version > CURRENT_VERSION) {
+			throw new IOException("Unsupported chunk meta data version " + version);
+		}
+		int flags = in.readUnsignedByte();
+		long lsb = in.readLong();
+		long msb = in.readLong();
+		int cx = in.readInt();
+		int cz = in.readInt();
+
+		WorldManager worldManager = SpoutManager.getWorldManager();
+		ChunkMetaData md = new ChunkMetaData(new UUID(msb, lsb), null, cx, cz, world.getMaxHeight(), worldManager.getWorldXShiftBits(world), worldManager.getWorldZShiftBits(world));
+		int volume = 16 * 16 * md.worldHeight;
+
+		if ((flags & FLAG_BLOCK_IDS) != 0) {
+			int length = Utils.readVarInt(in);
+			byte[] raw = new byte[length * 2];
+			in.readFully(raw);
+			md.customBlockIds = new short[volume];
+			ByteBuffer.wrap(raw).asShortBuffer().get(md.customBlockIds, 0, Math.min(length, volume));
+			md.conversionNeeded = true;
+		}
+		if ((flags & FLAG_BLOCK_DATA) != 0) {
+			int length = Utils.readVarInt(in);
+			md.customBlockData = new byte[volume];
+			in.readFully(md.customBlockData, 0, Math.min(length, volume));
+			if (length > volume) {
+				in.skipBytes(length - volume);
+			}
+		}
+
+		String[] keys = new String[Utils.readVarInt(in)];
+		for (int k = 0; k < keys.length; k++) {
+			keys[k] = in.readUTF();
+		}
+
+		readEntries(in, md.chunkData, keys);
+
+		int blocks = Utils.readVarInt(in);
+		for (int b = 0; b < blocks; b++) {
+			int position = Utils.readVarInt(in);
+			int x = (cx << 4) | ((position >> 4) & 0xF);
+			int y = position >>> 8;
+			int z = (cz << 4) | (position & 0xF);
+			HashMap<String, Serializable> map = new HashMap<String, Serializable>();
+			readEntries(in, map, keys);
+			md.blockData.put(x, y, z, map);
+		}
+
+		return md;
+	}
+
+	private static void indexKey(String key, HashMap<String, Integer> keyIndex, ArrayList<String> keys) {
+		if (!keyIndex.containsKey(key)) {
+			keyIndex.put(key, keys.size());
+			keys.add(key);
 		}
 	}
 
+	private static void writeEntries(DataOutputStream out, HashMap<String, Serializable> map, HashMap<String, Integer> keyIndex) throws IOException {
+		Utils.writeVarInt(out, map.size());
+		for (Entry<String, Serializable> entry : map.entrySet()) {
+			byte[] serial = toBytes(entry.getValue());
+			Utils.writeVarInt(out, keyIndex.get(entry.getKey()));
+			Utils.writeVarInt(out, serial.length);
+			out.write(serial);
+		}
+	}
+
+	private static void readEntries(DataInputStream in, HashMap<String, Serializable> map, String[] keys) throws IOException {
+		int size = Utils.readVarInt(in);
+		for (int e = 0; e < size; e++) {
+			String key = keys[Utils.readVarInt(in)];
+			SerializedData serial = new SerializedData();
+			serial.serialData = new byte[Utils.readVarInt(in)];
+			in.readFully(serial.serialData);
+			map.put(key, serial);
+		}
+	}
+
+	private static byte[] toBytes(Serializable o) throws IOException {
+		if (o instanceof SerializedData) {
+			return ((SerializedData) o).serialData;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Serializable resolve(Serializable serial) {
+		if (serial instanceof SerializedData) {
+			try {
+				return Utils.deserializeRaw(((SerializedData) serial).serialData);
+			} catch (ClassNotFoundException e) {
+			} catch (IOException e) {
+			}
+		}
+		return serial;
+	}
+
+	// Reads records written by the Java serialization format, these are marked dirty so the next save migrates them
 	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		blockData = new TByteShortByteKeyedObjectHashMap<HashMap<String, Serializable>>(100);
 		chunkData = new HashMap<String, Serializable>();
@@ -378,12 +606,17 @@ public class ChunkMetaData implements Serializable {
 		}
 	}
 
+	ItemMap getWorldItemMap() {
+		return worldItemMap;
+	}
+
 	public void setWorldItemMap(ItemMap worldItemMap) {
 		this.serverItemMap = ItemMap.getRootMap();
-		this.worldItemMap = worldItemMap;
 		if (conversionNeeded) {
 			convertIds(worldItemMap);
 		}
+		// Set last, a non null item map means the ids have been converted
+		this.worldItemMap = worldItemMap;
 	}
 
 	private void convertIds(ItemMap worldItemMap) {
@@ -400,17 +633,6 @@ public class ChunkMetaData implements Serializable {
 		conversionNeeded = false;
 	}
 
-	private void writeMap(ObjectOutputStream out, HashMap<String, Serializable> map) throws IOException {
-		if (map == null) {
-			out.writeBoolean(false);
-			return;
-		} else {
-			out.writeBoolean(true);
-		}
-
-		out.writeObject(map);
-	}
-
 	@SuppressWarnings("unchecked")
 	private HashMap<String, Serializable> readMap(ObjectInputStream in) throws IOException {
 		if (!in.readBoolean()) {
@@ -0,0 +1,158 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spoutapi.chunkstore;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.World;
+
+import org.getspout.spoutapi.Spout;
+
+/**
+ * Runs chunk meta data reads and writes on a background thread.
+ * <p/>
+ * All region file access goes through a single thread, so a read always sees the writes that were queued before it.
+ */
+public class ChunkMetaDataIO {
+	private final ChunkStore chunkStore = new ChunkStore();
+	private ScheduledExecutorService executor = null;
+
+	/**
+	 * Called on the I/O thread once chunk meta data has been read
+	 */
+	public interface ReadListener {
+		/**
+		 * @param world the chunk is in
+		 * @param x coordinate of the chunk
+		 * @param z coordinate of the chunk
+		 * @param md chunk meta data that was read, or null if there is none stored
+		 */
+		public void onRead(World world, int x, int z, ChunkMetaData md);
+	}
+
+	/**
+	 * Queues a read of the chunk meta data stored for a chunk
+	 * @param world the chunk is in
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 * @param listener to notify on the I/O thread once the data is read, may be null
+	 * @return future for the chunk meta data, which is null if there is none stored
+	 */
+	public Future<ChunkMetaData> read(final World world, final int x, final int z, final ReadListener listener) {
+		// Legacy records look the world up while they are read, make sure it is cached before leaving the main thread
+		Spout.getServer().getWorld(world.getUID());
+		return submit(new Callable<ChunkMetaData>() {
+			@Override
+			public ChunkMetaData call() throws IOException {
+				ChunkMetaData md = chunkStore.readChunkMetaData(world, x, z);
+				if (listener != null) {
+					listener.onRead(world, x, z, md);
+				}
+				return md;
+			}
+		});
+	}
+
+	/**
+	 * Queues a write of encoded chunk meta data
+	 * @param world the chunk is in
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 * @param encoded chunk meta data
+	 */
+	public void write(final World world, final int x, final int z, final byte[] encoded) {
+		submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				try {
+					chunkStore.writeChunkMetaData(world, x, z, encoded);
+				} catch (IOException e) {
+					System.out.println("[SpoutPlugin] Unable to write chunk meta data for " + x + ", " + z);
+					e.printStackTrace();
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Queues the region file holding the chunk to be closed
+	 * @param world the chunk is in
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 */
+	public void close(final World world, final int x, final int z) {
+		submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				chunkStore.closeChunkMetaData(world, x, z);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Waits for all queued reads and writes to finish and closes every region file
+	 */
+	public void closeAll() {
+		ScheduledExecutorService running;
+		synchronized (this) {
+			running = executor;
+			executor = null;
+		}
+		if (running != null) {
+			running.shutdown();
+			try {
+				if (!running.awaitTermination(60, TimeUnit.SECONDS)) {
+					System.out.println("[SpoutPlugin] Timed out waiting for chunk meta data to be written");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		chunkStore.closeAll();
+	}
+
+	private synchronized <T> Future<T> submit(Callable<T> task) {
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Spout Chunk Meta Data I/O");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					chunkStore.closeIdle();
+				}
+			}, 60, 60, TimeUnit.SECONDS);
+		}
+		return executor.submit(task);
+	}
+}
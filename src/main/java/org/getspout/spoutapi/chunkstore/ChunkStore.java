@@ -19,33 +19,70 @@
  */
 package org.getspout.spoutapi.chunkstore;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.HashMap;
+import java.io.ObjectStreamConstants;
+import java.io.PushbackInputStream;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bukkit.World;
 
 public class ChunkStore {
-	HashMap<UUID, HashMap<Long, SimpleRegionFile>> regionFiles = new HashMap<UUID, HashMap<Long, SimpleRegionFile>>();
+	private static volatile int maxOpenRegionFiles = 64;
+	private static volatile long regionFileIdleTimeout = 300000; // 5 min
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+	private static volatile int openRegionFiles = 0;
 
-	public void closeAll() {
-		for (UUID uid : regionFiles.keySet()) {
-			HashMap<Long, SimpleRegionFile> worldRegions = regionFiles.get(uid);
-			Iterator<SimpleRegionFile> itr = worldRegions.values().iterator();
-			while (itr.hasNext()) {
-				SimpleRegionFile rf = itr.next();
-				if (rf != null) {
-					rf.close();
-					itr.remove();
-				}
+	// Open region files, least recently used first
+	private final LinkedHashMap<RegionKey, SimpleRegionFile> regionFiles = new LinkedHashMap<RegionKey, SimpleRegionFile>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<RegionKey, SimpleRegionFile> eldest) {
+			if (size() > maxOpenRegionFiles) {
+				eldest.getValue().close();
+				evictions.incrementAndGet();
+				return true;
 			}
+			return false;
+		}
+	};
+
+	public void closeAll() {
+		for (SimpleRegionFile rf : regionFiles.values()) {
+			rf.close();
 		}
 		regionFiles.clear();
+		openRegionFiles = 0;
+	}
+
+	/**
+	 * Closes the region files that have not been accessed within the idle timeout
+	 */
+	public void closeIdle() {
+		long cutoff = System.currentTimeMillis() - regionFileIdleTimeout;
+		Iterator<SimpleRegionFile> itr = regionFiles.values().iterator();
+		while (itr.hasNext()) {
+			SimpleRegionFile rf = itr.next();
+			// Iteration is in access order, so the rest were used more recently
+			if (rf.getLastAccessTime() > cutoff) {
+				break;
+			}
+			rf.close();
+			itr.remove();
+		}
+		openRegionFiles = regionFiles.size();
 	}
 
 	public ChunkMetaData readChunkMetaData(World world, int x, int z) throws IOException {
@@ -54,6 +91,26 @@ public class ChunkStore {
 		if (in == null) {
 			return null;
 		}
+		PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		int b1 = pushback.read();
+		int b2 = pushback.read();
+		if (b2 < 0) {
+			return null;
+		}
+		pushback.unread(b2);
+		pushback.unread(b1);
+		try {
+			if ((short) ((b1 << 8) | b2) == ObjectStreamConstants.STREAM_MAGIC) {
+				return readLegacyChunkMetaData(pushback, x, z);
+			}
+			return ChunkMetaData.read(new DataInputStream(pushback), world);
+		} catch (IOException e) {
+			// Assume the format changed
+			return null;
+		}
+	}
+
+	private ChunkMetaData readLegacyChunkMetaData(InputStream in, int x, int z) throws IOException {
 		ObjectInputStream objectStream = new ObjectInputStream(in);
 		try {
 			Object o = objectStream.readObject();
@@ -62,10 +119,6 @@ public class ChunkStore {
 			} else {
 				throw new RuntimeException("Wrong class type read for chunk meta data for " + x + ", " + z);
 			}
-		} catch (IOException e) {
-			// Assume the format changed
-			return null;
-			//throw new RuntimeException("Unable to process chunk meta data for " + x + ", " + z, e);
 		} catch (ClassNotFoundException e) {
 			// Assume the format changed
 			//System.out.println("[SpoutPlugin] is Unable to find serialized class for " + x + ", " + z + ", " + e.getMessage());
@@ -79,51 +132,131 @@ public class ChunkStore {
 			return;
 		}
 		try {
-			SimpleRegionFile rf = getSimpleRegionFile(world, x, z);
-			ObjectOutputStream objectStream = new ObjectOutputStream(rf.getOutputStream(x, z));
-			objectStream.writeObject(data);
-			objectStream.flush();
-			objectStream.close();
+			writeChunkMetaData(world, x, z, encodeChunkMetaData(data, null));
 			data.setDirty(false);
 		} catch (IOException e) {
 			throw new RuntimeException("Unable to write chunk meta data for " + x + ", " + z, e);
 		}
 	}
 
-	public void closeChunkMetaData(World world, int x, int z) {
+	/**
+	 * Writes chunk meta data that was encoded by {@link #encodeChunkMetaData(ChunkMetaData, IdTranslationTable)}
+	 */
+	void writeChunkMetaData(World world, int x, int z, byte[] encoded) throws IOException {
 		SimpleRegionFile rf = getSimpleRegionFile(world, x, z);
+		DataOutputStream out = rf.getOutputStream(x, z);
+		out.write(encoded);
+		out.close();
+	}
+
+	/**
+	 * Encodes a snapshot of the chunk meta data, which can be written to disk later without touching the chunk meta data again
+	 */
+	static byte[] encodeChunkMetaData(ChunkMetaData data, IdTranslationTable translation) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		DataOutputStream out = new DataOutputStream(bytes);
+		data.write(out, translation);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	public void closeChunkMetaData(World world, int x, int z) {
+		SimpleRegionFile rf = regionFiles.remove(new RegionKey(world.getUID(), x >> 5, z >> 5));
 		if (rf != null) {
 			rf.close();
 		}
+		openRegionFiles = regionFiles.size();
 	}
 
 	private SimpleRegionFile getSimpleRegionFile(World world, int x, int z) {
-		File directory = new File(world.getWorldFolder(), "spout_meta");
-
-		directory.mkdirs();
-
-		UUID key = world.getUID();
-
-		HashMap<Long, SimpleRegionFile> worldRegions = regionFiles.get(key);
-
-		if (worldRegions == null) {
-			worldRegions = new HashMap<Long, SimpleRegionFile>();
-			regionFiles.put(key, worldRegions);
-		}
-
 		int rx = x >> 5;
 		int rz = z >> 5;
 
-		long key2 = (((long) rx) << 32) | (((long) rz) & 0xFFFFFFFFL);
+		RegionKey key = new RegionKey(world.getUID(), rx, rz);
 
-		SimpleRegionFile regionFile = worldRegions.get(key2);
+		SimpleRegionFile regionFile = regionFiles.get(key);
 
 		if (regionFile == null) {
+			misses.incrementAndGet();
+
+			File directory = new File(world.getWorldFolder(), "spout_meta");
+
+			directory.mkdirs();
+
 			File file = new File(directory, "spout_" + rx + "_" + rz + "_.spm");
 			regionFile = new SimpleRegionFile(file, rx, rz);
-			worldRegions.put(key2, regionFile);
+			regionFiles.put(key, regionFile);
+			openRegionFiles = regionFiles.size();
+		} else {
+			hits.incrementAndGet();
 		}
 
 		return regionFile;
 	}
+
+	/**
+	 * Sets the maximum number of region files kept open, the least recently used file is closed beyond that
+	 * @param max open region files
+	 */
+	public static void setMaxOpenRegionFiles(int max) {
+		maxOpenRegionFiles = Math.max(1, max);
+	}
+
+	public static int getMaxOpenRegionFiles() {
+		return maxOpenRegionFiles;
+	}
+
+	/**
+	 * Sets how long a region file may go unused before it is closed
+	 * @param millis idle timeout
+	 */
+	public static void setRegionFileIdleTimeout(long millis) {
+		regionFileIdleTimeout = millis;
+	}
+
+	public static long getRegionFileIdleTimeout() {
+		return regionFileIdleTimeout;
+	}
+
+	public static int getOpenRegionFiles() {
+		return openRegionFiles;
+	}
+
+	public static long getRegionFileHits() {
+		return hits.get();
+	}
+
+	public static long getRegionFileMisses() {
+		return misses.get();
+	}
+
+	public static long getRegionFileEvictions() {
+		return evictions.get();
+	}
+
+	private static final class RegionKey {
+		private final UUID world;
+		private final int rx;
+		private final int rz;
+
+		RegionKey(UUID world, int rx, int rz) {
+			this.world = world;
+			this.rx = rx;
+			this.rz = rz;
+		}
+
+		@Override
+		public int hashCode() {
+			return (world.hashCode() * 31 + rx) * 31 + rz;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RegionKey)) {
+				return false;
+			}
+			RegionKey other = (RegionKey) o;
+			return rx == other.rx && rz == other.rz && world.equals(other.world);
+		}
+	}
 }
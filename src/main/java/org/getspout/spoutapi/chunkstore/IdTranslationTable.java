@@ -0,0 +1,56 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spoutapi.chunkstore;
+
+import java.util.Arrays;
+
+import org.getspout.spoutapi.inventory.ItemMap;
+
+/**
+ * Converts custom ids from one item map to another for a whole save pass.
+ * <p/>
+ * Each id is looked up in the item maps at most once, after that it is a single array read.
+ */
+class IdTranslationTable {
+	private final ItemMap from;
+	private final ItemMap to;
+	private final int[] table = new int[65536];
+
+	IdTranslationTable(ItemMap from, ItemMap to) {
+		this.from = from;
+		this.to = to;
+		Arrays.fill(table, -1);
+		table[0] = 0;
+	}
+
+	boolean isFor(ItemMap from, ItemMap to) {
+		return this.from == from && this.to == to;
+	}
+
+	short translate(short id) {
+		int index = id & 0xFFFF;
+		int translated = table[index];
+		if (translated < 0) {
+			translated = to.convertFrom(from, index);
+			table[index] = translated;
+		}
+		return (short) translated;
+	}
+}
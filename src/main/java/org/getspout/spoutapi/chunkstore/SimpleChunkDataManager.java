@@ -22,13 +22,21 @@ package org.getspout.spoutapi.chunkstore;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongByteHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
@@ -36,15 +44,42 @@ import org.bukkit.World;
 
 import org.getspout.spoutapi.chunkdatamanager.ChunkDataManager;
 import org.getspout.spoutapi.inventory.ItemMap;
+import org.getspout.spoutapi.inventory.MaterialManager;
 import org.getspout.spoutapi.io.store.FlatFileStore;
+import org.getspout.spoutapi.packet.PacketCustomBlockChunkOverride;
 
 public class SimpleChunkDataManager implements ChunkDataManager {
-	private ChunkStore chunkStore = new ChunkStore();
-	private HashMap<UUID, TLongObjectHashMap<ChunkMetaData>> chunkMetaDataLoaded = new HashMap<UUID, TLongObjectHashMap<ChunkMetaData>>();
+	private static final Future<?> DONE;
+	// Custom block states of a chunk, chunks that are not yet known have no state
+	private static final byte CUSTOM_BLOCKS = 1;
+	private static final byte NO_CUSTOM_BLOCKS = 2;
+	static {
+		FutureTask<Object> done = new FutureTask<Object>(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, null);
+		done.run();
+		DONE = done;
+	}
+
+	private final ChunkMetaDataIO io = new ChunkMetaDataIO();
+	private final ConcurrentHashMap<UUID, WorldChunks> chunkMetaDataLoaded = new ConcurrentHashMap<UUID, WorldChunks>();
+	// Striped by chunk key, each guards the chunk stripe with the same index in every world
+	private final Object[] chunkLocks = new Object[64];
+	{
+		for (int i = 0; i < chunkLocks.length; i++) {
+			chunkLocks[i] = new Object();
+		}
+	}
 	private HashMap<UUID, ItemMap> worldItemMaps = new HashMap<UUID, ItemMap>();
+	// Server to world id translations for the current save pass of each world
+	private HashMap<UUID, IdTranslationTable> translations = new HashMap<UUID, IdTranslationTable>();
+	// Worlds with chunks saved since their item maps were last flushed
+	private final Set<UUID> pendingItemMapFlush = new HashSet<UUID>();
 
 	public void closeAllFiles() {
-		chunkStore.closeAll();
+		io.closeAll();
 	}
 
 	public ChunkMetaData loadChunk(Chunk c) {
@@ -56,16 +91,40 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 		return md;
 	}
 
+	public Future<?> prefetchChunk(Chunk c) {
+		return prefetchChunk(c.getWorld(), c.getX(), c.getZ());
+	}
+
+	/**
+	 * Starts reading the meta data of a chunk on the I/O thread, without waiting for it.
+	 * <p/>
+	 * Once the returned future is done the data is held in memory and the getters of this manager return without
+	 * touching the disk. Accessing the chunk earlier waits for the read to finish.
+	 * @param world the chunk is in
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 * @return future that is done once the meta data of the chunk is loaded
+	 */
+	public Future<?> prefetchChunk(World world, int x, int z) {
+		long key = getKey(x, z);
+		WorldChunks chunks = getWorldChunks(world.getUID());
+		ChunkStripe stripe = chunks.getStripe(key);
+		synchronized (getLock(key)) {
+			if (stripe.loaded.containsKey(key) || stripe.absent.contains(key)) {
+				return DONE;
+			}
+			return queueRead(chunks, world, x, z, key);
+		}
+	}
+
 	public boolean loadWorldChunks(World w) {
 		Chunk[] chunks = w.getLoadedChunks();
 
-		boolean loaded = false;
-
 		for (Chunk c : chunks) {
-			loaded |= loadChunk(c) != null;
+			prefetchChunk(c);
 		}
 
-		return loaded;
+		return chunks.length > 0;
 	}
 
 	public boolean loadAllChunks() {
@@ -89,29 +148,49 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 	}
 
 	public boolean saveChunk(World w, int x, int z) {
-		ChunkMetaData md = getMetaData(w, x, z, false, false);
-		if (md != null) {
-			chunkStore.writeChunkMetaData(w, x, z, md);
-			return true;
-		} else {
-			return false;
-		}
+		return saveChunk(w, getMetaData(w, x, z, false, false));
 	}
 
 	public boolean saveChunk(World w, int x, int z, boolean remove) {
 		boolean saved = saveChunk(w, x, z);
-		if (saved) {
-			if (remove) {
-				final TLongObjectHashMap<ChunkMetaData> chunks = chunkMetaDataLoaded.get(w.getUID());
-				if (chunks == null) {
-					return false;
+		if (remove) {
+			long key = getKey(x, z);
+			WorldChunks chunks = chunkMetaDataLoaded.get(w.getUID());
+			if (chunks != null) {
+				ChunkStripe stripe = chunks.getStripe(key);
+				synchronized (getLock(key)) {
+					stripe.loaded.remove(key);
+					stripe.reads.remove(key);
+					stripe.absent.remove(key);
+					stripe.customBlocks.remove(key);
 				}
-
-				chunks.remove((((long) x) << 32) | (((long) z) & 0xFFFFFFFFL));
 			}
-		} else {
+		}
+		return saved;
+	}
+
+	/**
+	 * Encodes dirty chunk meta data on the calling thread and queues it to be written
+	 */
+	private boolean saveChunk(World w, ChunkMetaData md) {
+		if (md == null) {
 			return false;
 		}
+		// Chunks that were prefetched but never accessed still hold their stored ids
+		prepare(w, md);
+		if (md.isDirty()) {
+			byte[] encoded;
+			try {
+				encoded = ChunkStore.encodeChunkMetaData(md, getTranslation(w, md));
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to encode chunk meta data for " + md.getChunkX() + ", " + md.getChunkZ(), e);
+			}
+			md.setDirty(false);
+			io.write(w, md.getChunkX(), md.getChunkZ(), encoded);
+			synchronized (pendingItemMapFlush) {
+				pendingItemMapFlush.add(w.getUID());
+			}
+		}
 		return true;
 	}
 
@@ -119,7 +198,7 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 		ChunkMetaData md = getMetaData(w, x, z, false, false);
 
 		if (md != null) {
-			chunkStore.closeChunkMetaData(w, x, z);
+			io.close(w, x, z);
 			return true;
 		} else {
 			return false;
@@ -135,26 +214,85 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 	}
 
 	public boolean saveWorldChunks(World world, boolean unload) {
-		boolean unloaded = false;
-		synchronized (chunkMetaDataLoaded) {
-			TLongObjectHashMap<ChunkMetaData> worldChunks = chunkMetaDataLoaded.get(world.getUID());
+		UUID uid = world.getUID();
+		// Saved chunks stay loaded, only an unload drops them
+		WorldChunks chunks = unload ? chunkMetaDataLoaded.remove(uid) : chunkMetaDataLoaded.get(uid);
+
+		if (chunks == null) {
+			return false;
+		}
+
+		// Start a new save pass
+		translations.remove(uid);
 
-			if (worldChunks == null) {
-				return false;
+		boolean unloaded = false;
+		for (ChunkMetaData md : getLoaded(chunks)) {
+			unloaded |= saveChunk(world, md);
+			if (unload) {
+				io.close(world, md.getChunkX(), md.getChunkZ());
 			}
+		}
 
-			Collection<ChunkMetaData> chunks = worldChunks.valueCollection();
+		flushItemMaps(uid);
+		return unloaded;
+	}
 
-			for (ChunkMetaData md : chunks) {
-				unloaded |= saveChunk(world, md.getChunkX(), md.getChunkZ());
-				if (unload) {
-					closeChunk(world, md.getChunkX(), md.getChunkZ());
-				}
+	/**
+	 * Copies the loaded chunk meta data of a world, one stripe at a time
+	 */
+	private List<ChunkMetaData> getLoaded(WorldChunks chunks) {
+		List<ChunkMetaData> loaded = new ArrayList<ChunkMetaData>();
+		for (int i = 0; i < chunks.stripes.length; i++) {
+			TLongObjectHashMap<ChunkMetaData> stripe = chunks.stripes[i].loaded;
+			synchronized (chunkLocks[i]) {
+				loaded.addAll(stripe.valueCollection());
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Saves the item maps of every world that had chunks saved since the last flush.
+	 * <p/>
+	 * This is called once per tick, so a burst of chunk saves results in a single write of each item map.
+	 */
+	public void flushItemMaps() {
+		UUID[] pending;
+		synchronized (pendingItemMapFlush) {
+			if (pendingItemMapFlush.isEmpty()) {
+				return;
 			}
+			pending = pendingItemMapFlush.toArray(new UUID[pendingItemMapFlush.size()]);
+		}
+		for (UUID uid : pending) {
+			flushItemMaps(uid);
+		}
+	}
 
-			worldChunks.clear();
+	private void flushItemMaps(UUID uid) {
+		synchronized (pendingItemMapFlush) {
+			pendingItemMapFlush.remove(uid);
+		}
+		ItemMap worldItemMap = worldItemMaps.get(uid);
+		if (worldItemMap != null) {
+			worldItemMap.save();
+		}
+		ItemMap serverItemMap = ItemMap.getRootMap();
+		if (serverItemMap != null) {
+			serverItemMap.save();
 		}
-		return unloaded;
+	}
+
+	private IdTranslationTable getTranslation(World world, ChunkMetaData md) {
+		if (md.getCustomBlockIds() == null) {
+			return null;
+		}
+		IdTranslationTable translation = translations.get(world.getUID());
+		if (translation == null || !translation.isFor(ItemMap.getRootMap(), md.getWorldItemMap())) {
+			translation = new IdTranslationTable(ItemMap.getRootMap(), md.getWorldItemMap());
+			translations.put(world.getUID(), translation);
+		}
+		return translation;
 	}
 
 	public boolean unloadAllChunks() {
@@ -173,11 +311,19 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 	public Serializable setBlockData(String id, World world, int x, int y, int z, Serializable data) {
 		ChunkMetaData md = getMetaData(world, x >> 4, z >> 4, true, true);
 
-		return md.putBlockData(id, x, y, z, data);
+		Serializable old = md.putBlockData(id, x, y, z, data);
+		if (id.equals(MaterialManager.blockIdString)) {
+			markCustomBlocks(world, x >> 4, z >> 4, md.getCustomBlockIds() != null);
+		}
+		return old;
 	}
 
 	@Override
 	public Serializable getBlockData(String id, World world, int x, int y, int z) {
+		if (id.equals(MaterialManager.blockIdString) && !mayHaveCustomBlocks(world, x >> 4, z >> 4)) {
+			return null;
+		}
+
 		ChunkMetaData md = getMetaData(world, x >> 4, z >> 4, true, false);
 
 		if (md == null) {
@@ -228,6 +374,10 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 
 	@Override
 	public short[] getCustomBlockIds(World world, int x, int z) {
+		if (!mayHaveCustomBlocks(world, x, z)) {
+			return null;
+		}
+
 		ChunkMetaData md = getMetaData(world, x, z, true, false);
 
 		if (md == null) {
@@ -242,6 +392,79 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 		ChunkMetaData md = getMetaData(world, x, z, true, true);
 
 		md.setCustomBlockIds(ids);
+		markCustomBlocks(world, x, z, ids != null);
+	}
+
+	/**
+	 * Checks if the chunk may contain custom blocks, without touching the disk.
+	 *
+	 * Returns false only for chunks which are known to have no custom block ids.
+	 * @param world
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 * @return false if the chunk has no custom blocks
+	 */
+	public boolean mayHaveCustomBlocks(World world, int x, int z) {
+		WorldChunks chunks = chunkMetaDataLoaded.get(world.getUID());
+		if (chunks == null) {
+			return true;
+		}
+		long key = getKey(x, z);
+		ChunkStripe stripe = chunks.getStripe(key);
+		synchronized (getLock(key)) {
+			return stripe.customBlocks.get(key) != NO_CUSTOM_BLOCKS;
+		}
+	}
+
+	private void markCustomBlocks(World world, int x, int z, boolean present) {
+		WorldChunks chunks = chunkMetaDataLoaded.get(world.getUID());
+		if (chunks != null) {
+			long key = getKey(x, z);
+			ChunkStripe stripe = chunks.getStripe(key);
+			synchronized (getLock(key)) {
+				if (stripe.loaded.containsKey(key)) {
+					stripe.customBlocks.put(key, present ? CUSTOM_BLOCKS : NO_CUSTOM_BLOCKS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the {@link PacketCustomBlockChunkOverride} for a chunk.
+	 * <p/>
+	 * The encoded custom blocks are cached with the chunk meta data until they change. On a miss the packet is
+	 * encoded when it is compressed, off the main thread, and fills the cache from there.
+	 * @param world the chunk is in
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 * @return packet
+	 */
+	public PacketCustomBlockChunkOverride getCustomBlocksPacket(World world, int x, int z) {
+		ChunkMetaData md = getMetaData(world, x, z, true, false);
+
+		if (md == null || md.getCustomBlockIds() == null) {
+			return new PacketCustomBlockChunkOverride(x, z, null);
+		}
+
+		byte[] encoded = md.getEncodedCustomBlocks();
+		if (encoded != null) {
+			return new PacketCustomBlockChunkOverride(x, z, encoded);
+		}
+		return new PacketCustomBlockChunkOverride(md, x, z);
+	}
+
+	/**
+	 * Drops the cached encoding of the custom blocks of a chunk, after its arrays were altered in place
+	 * @param world the chunk is in
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 */
+	public void invalidateEncodedCustomBlocks(World world, int x, int z) {
+		ChunkMetaData md = getMetaData(world, x, z, false, false);
+
+		if (md != null) {
+			md.invalidateEncodedCustomBlocks();
+		}
 	}
 
 	@Override
@@ -263,61 +486,126 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 	}
 
 	private ChunkMetaData getMetaData(World world, int x, int z, boolean load, boolean loadOrCreate) {
-		long key = (((long) x) << 32) | (((long) z) & 0xFFFFFFFFL);
-		UUID uid = world.getUID();
-		ChunkMetaData md = null;
-		synchronized (chunkMetaDataLoaded) {
-			TLongObjectHashMap<ChunkMetaData> worldChunks = chunkMetaDataLoaded.get(uid);
-			if (worldChunks == null) {
-				worldChunks = new TLongObjectHashMap<ChunkMetaData>();
-				chunkMetaDataLoaded.put(uid, worldChunks);
-			}
-
-			md = worldChunks.get(key);
-
+		long key = getKey(x, z);
+		WorldChunks chunks = getWorldChunks(world.getUID());
+		ChunkStripe stripe = chunks.getStripe(key);
+		ChunkMetaData md;
+		Future<?> read = null;
+		synchronized (getLock(key)) {
+			md = stripe.loaded.get(key);
 			if (md == null && (load || loadOrCreate)) {
-				try {
-					md = chunkStore.readChunkMetaData(world, x, z);
-					if (md != null) {
-						if (!md.getWorldUID().equals(world.getUID()) || md.getChunkX() != x || md.getChunkZ() != z) {
-							System.err.println("Chunk data mismatch!");
-							System.err.println("Expected: " + world.getUID() + " " + x + " " + z);
-							System.err.println("Actual: " + md.getWorldUID() + " " + md.getChunkX() + " " + md.getChunkZ());
-							//throw new RuntimeException("Chunk meta data stored in wrong location");
-						}
-						md.setWorldItemMap(getWorldItemMap(world));
-					}
-				} catch (IOException e) {
-					e.printStackTrace();
+				if (!stripe.absent.contains(key)) {
+					read = queueRead(chunks, world, x, z, key);
+				} else if (!loadOrCreate) {
 					return null;
 				}
-
-				if (md == null && loadOrCreate) {
-					md = new ChunkMetaData(world.getUID(), getWorldItemMap(world), x, z);
+			}
+		}
+		// Wait outside the lock so the I/O thread can install the result
+		if (read != null) {
+			try {
+				read.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				synchronized (getLock(key)) {
+					PendingRead pending = stripe.reads.get(key);
+					if (pending != null && pending.future == read) {
+						stripe.reads.remove(key);
+					}
 				}
-
-				if (md != null) {
-					worldChunks.put(key, md);
+				return null;
+			}
+			synchronized (getLock(key)) {
+				md = stripe.loaded.get(key);
+			}
+		}
+		if (md == null && loadOrCreate) {
+			ItemMap worldItemMap = getWorldItemMap(world);
+			synchronized (getLock(key)) {
+				md = stripe.loaded.get(key);
+				if (md == null) {
+					md = new ChunkMetaData(world.getUID(), worldItemMap, x, z);
+					stripe.loaded.put(key, md);
+					stripe.absent.remove(key);
+					stripe.customBlocks.put(key, NO_CUSTOM_BLOCKS);
 				}
 			}
 		}
+		return prepare(world, md);
+	}
 
+	/**
+	 * Converts the ids of freshly read chunk meta data to server ids, on first access.
+	 */
+	private ChunkMetaData prepare(World world, ChunkMetaData md) {
+		if (md != null && md.getWorldItemMap() == null) {
+			synchronized (md) {
+				if (md.getWorldItemMap() == null) {
+					md.setWorldItemMap(getWorldItemMap(world));
+				}
+			}
+		}
 		return md;
 	}
 
+	/**
+	 * Returns the read queued for a chunk, queueing one if there is none. Must hold the lock of the chunk.
+	 */
+	private Future<?> queueRead(WorldChunks chunks, World world, int x, int z, long key) {
+		ChunkStripe stripe = chunks.getStripe(key);
+		PendingRead read = stripe.reads.get(key);
+		if (read == null) {
+			read = new PendingRead(stripe, key);
+			// The I/O thread blocks on the lock until the read is registered
+			read.future = io.read(world, x, z, read);
+			stripe.reads.put(key, read);
+		}
+		return read.future;
+	}
+
+	private WorldChunks getWorldChunks(UUID uid) {
+		WorldChunks chunks = chunkMetaDataLoaded.get(uid);
+		if (chunks == null) {
+			chunks = new WorldChunks();
+			WorldChunks existing = chunkMetaDataLoaded.putIfAbsent(uid, chunks);
+			if (existing != null) {
+				chunks = existing;
+			}
+		}
+		return chunks;
+	}
+
+	private Object getLock(long key) {
+		return chunkLocks[getStripeIndex(key)];
+	}
+
+	private static int getStripeIndex(long key) {
+		int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+		return hash >>> 26;
+	}
+
+	private static long getKey(int x, int z) {
+		return (((long) x) << 32) | (((long) z) & 0xFFFFFFFFL);
+	}
+
 	private ItemMap getWorldItemMap(World world) {
 		UUID uid = world.getUID();
-		ItemMap worldItemMap = worldItemMaps.get(uid);
-		if (worldItemMap == null) {
-			File dir = new File(world.getWorldFolder(), "spout_meta");
-			dir.mkdirs();
-
-			FlatFileStore<Integer> fs = new FlatFileStore<Integer>(new File(dir, "worldItemMap.txt"), Integer.class);
-			fs.load();
-			worldItemMap = new ItemMap(ItemMap.getRootMap(), fs, null);
+		synchronized (worldItemMaps) {
+			ItemMap worldItemMap = worldItemMaps.get(uid);
+			if (worldItemMap == null) {
+				File dir = new File(world.getWorldFolder(), "spout_meta");
+				dir.mkdirs();
+
+				FlatFileStore<Integer> fs = new FlatFileStore<Integer>(new File(dir, "worldItemMap.txt"), Integer.class);
+				fs.load();
+				worldItemMap = new ItemMap(ItemMap.getRootMap(), fs, null);
+				worldItemMaps.put(uid, worldItemMap);
+			}
+			return worldItemMap;
 		}
-		worldItemMaps.put(uid, worldItemMap);
-		return worldItemMap;
 	}
 
 	public int getStringId(String string) {
@@ -326,6 +614,76 @@ public class SimpleChunkDataManager implements ChunkDataManager {
 
 	@Override
 	public ItemMap getItemMap(World world) {
-		return worldItemMaps.get(world.getUID());
+		synchronized (worldItemMaps) {
+			return worldItemMaps.get(world.getUID());
+		}
+	}
+
+	/**
+	 * Chunk meta data of a world, keyed by chunk
+	 */
+	private static class WorldChunks {
+		// Split like the chunk locks, each stripe is guarded by the lock of its chunks
+		private final ChunkStripe[] stripes = new ChunkStripe[64];
+		{
+			for (int i = 0; i < stripes.length; i++) {
+				stripes[i] = new ChunkStripe();
+			}
+		}
+
+		private ChunkStripe getStripe(long key) {
+			return stripes[getStripeIndex(key)];
+		}
+	}
+
+	/**
+	 * The chunks of a world that share a lock
+	 */
+	private static class ChunkStripe {
+		private final TLongObjectHashMap<ChunkMetaData> loaded = new TLongObjectHashMap<ChunkMetaData>();
+		// Reads queued on the I/O thread
+		private final TLongObjectHashMap<PendingRead> reads = new TLongObjectHashMap<PendingRead>();
+		// Chunks known to have no stored meta data
+		private final TLongHashSet absent = new TLongHashSet();
+		// Custom block state of a chunk, missing if not yet known
+		private final TLongByteHashMap customBlocks = new TLongByteHashMap();
+	}
+
+	/**
+	 * A read queued on the I/O thread, installs the result unless the chunk was unloaded in the meantime
+	 */
+	private class PendingRead implements ChunkMetaDataIO.ReadListener {
+		private final ChunkStripe stripe;
+		private final long key;
+		private Future<ChunkMetaData> future;
+
+		PendingRead(ChunkStripe stripe, long key) {
+			this.stripe = stripe;
+			this.key = key;
+		}
+
+		@Override
+		public void onRead(World world, int x, int z, ChunkMetaData md) {
+			if (md != null && (!md.getWorldUID().equals(world.getUID()) || md.getChunkX() != x || md.getChunkZ() != z)) {
+				System.err.println("Chunk data mismatch!");
+				System.err.println("Expected: " + world.getUID() + " " + x + " " + z);
+				System.err.println("Actual: " + md.getWorldUID() + " " + md.getChunkX() + " " + md.getChunkZ());
+				//throw new RuntimeException("Chunk meta data stored in wrong location");
+			}
+			synchronized (getLock(key)) {
+				if (stripe.reads.get(key) != this) {
+					return;
+				}
+				stripe.reads.remove(key);
+				if (md != null) {
+					if (stripe.loaded.putIfAbsent(key, md) == null) {
+						stripe.customBlocks.put(key, md.getCustomBlockIds() != null ? CUSTOM_BLOCKS : NO_CUSTOM_BLOCKS);
+					}
+				} else {
+					stripe.absent.add(key);
+					stripe.customBlocks.put(key, NO_CUSTOM_BLOCKS);
+				}
+			}
+		}
 	}
 }
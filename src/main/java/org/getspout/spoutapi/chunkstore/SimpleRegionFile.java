@@ -22,29 +22,37 @@ package org.getspout.spoutapi.chunkstore;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 public class SimpleRegionFile {
+	// Chunk starts, chunk lengths and the segment size, 4096 bytes each
+	private static final int HEADER_SIZE = 4096 * 3;
+	private static final int LENGTH_OFFSET = 4096;
+	private static final int SEGMENT_SIZE_OFFSET = 4096 * 2;
+
 	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer header;
 	private final int[] dataStart = new int[1024];
 	private final int[] dataActualLength = new int[1024];
 	private final int[] dataLength = new int[1024];
-	private final ArrayList<Boolean> inuse = new ArrayList<Boolean>();
+	private final BitSet inuse = new BitSet();
 	private int segmentSize;
 	private int segmentMask;
 	private final int rx;
 	private final int rz;
 	private final int defaultSegmentSize;
 	private final File parent;
-	@SuppressWarnings("unused")
 	private long lastAccessTime = System.currentTimeMillis();
-	@SuppressWarnings("unused")
-	private static long TIMEOUT_TIME = 300000; // 5 min
 
 	public SimpleRegionFile(File f, int rx, int rz) {
 		this(f, rx, rz, 10);
@@ -56,106 +64,64 @@ public class SimpleRegionFile {
 		this.defaultSegmentSize = defaultSegmentSize;
 		this.parent = f;
 
+		getChannel();
+	}
+
+	public final RandomAccessFile getFile() {
+		getChannel();
+		return file;
+	}
+
+	private FileChannel getChannel() {
 		lastAccessTime = System.currentTimeMillis();
 		if (file == null) {
 			try {
-				this.file = new RandomAccessFile(parent, "rw");
-
-				if (file.length() < 4096 * 3) {
-					for (int i = 0; i < 1024 * 3; i++) {
-						file.writeInt(0);
-					}
-					file.seek(4096 * 2);
-					file.writeInt(defaultSegmentSize);
-				}
-
-				file.seek(4096 * 2);
-
-				this.segmentSize = file.readInt();
-				this.segmentMask = (1 << segmentSize) - 1;
-
-				int reservedSegments = this.sizeToSegments(4096 * 3);
-
-				for (int i = 0; i < reservedSegments; i++) {
-					while (inuse.size() <= i) {
-						inuse.add(false);
-					}
-					inuse.set(i, true);
-				}
-
-				file.seek(0);
-
-				for (int i = 0; i < 1024; i++) {
-					dataStart[i] = file.readInt();
-				}
-
-				for (int i = 0; i < 1024; i++) {
-					dataActualLength[i] = file.readInt();
-					dataLength[i] = sizeToSegments(dataActualLength[i]);
-					setInUse(i, true);
-				}
-
-				extendFile();
+				open();
 			} catch (IOException fnfe) {
+				close();
 				throw new RuntimeException(fnfe);
 			}
 		}
+		return channel;
 	}
 
-	public final RandomAccessFile getFile() {
-		lastAccessTime = System.currentTimeMillis();
-		if (file == null) {
-			try {
-				this.file = new RandomAccessFile(parent, "rw");
-
-				if (file.length() < 4096 * 3) {
-					for (int i = 0; i < 1024 * 3; i++) {
-						file.writeInt(0);
-					}
-					file.seek(4096 * 2);
-					file.writeInt(defaultSegmentSize);
-				}
+	private void open() throws IOException {
+		this.file = new RandomAccessFile(parent, "rw");
+		this.channel = file.getChannel();
 
-				file.seek(4096 * 2);
-
-				this.segmentSize = file.readInt();
-				this.segmentMask = (1 << segmentSize) - 1;
+		boolean created = file.length() < HEADER_SIZE;
+		if (created) {
+			file.setLength(0);
+			file.setLength(HEADER_SIZE);
+		}
 
-				int reservedSegments = this.sizeToSegments(4096 * 3);
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
 
-				for (int i = 0; i < reservedSegments; i++) {
-					while (inuse.size() <= i) {
-						inuse.add(false);
-					}
-					inuse.set(i, true);
-				}
+		if (created) {
+			header.putInt(SEGMENT_SIZE_OFFSET, defaultSegmentSize);
+		}
 
-				file.seek(0);
+		this.segmentSize = header.getInt(SEGMENT_SIZE_OFFSET);
+		this.segmentMask = (1 << segmentSize) - 1;
 
-				for (int i = 0; i < 1024; i++) {
-					dataStart[i] = file.readInt();
-				}
+		inuse.clear();
+		inuse.set(0, sizeToSegments(HEADER_SIZE));
 
-				for (int i = 0; i < 1024; i++) {
-					dataActualLength[i] = file.readInt();
-					dataLength[i] = sizeToSegments(dataActualLength[i]);
-					setInUse(i, true);
-				}
+		for (int i = 0; i < 1024; i++) {
+			dataStart[i] = header.getInt(i << 2);
+		}
 
-				extendFile();
-			} catch (IOException fnfe) {
-				throw new RuntimeException(fnfe);
-			}
+		for (int i = 0; i < 1024; i++) {
+			dataActualLength[i] = header.getInt(LENGTH_OFFSET + (i << 2));
+			dataLength[i] = sizeToSegments(dataActualLength[i]);
+			setInUse(i, true);
 		}
-		return file;
+
+		extendFile();
 	}
 
-	public boolean testCloseTimeout() {
-		/*if (System.currentTimeMillis() - TIMEOUT_TIME > lastAccessTime) {
-			close();
-			return true;
-		}*/
-		return false;
+	public long getLastAccessTime() {
+		return lastAccessTime;
 	}
 
 	public DataOutputStream getOutputStream(int x, int z) {
@@ -171,32 +137,47 @@ public class SimpleRegionFile {
 		}
 		byte[] data = new byte[actualLength];
 
-		getFile().seek(dataStart[index] << segmentSize);
-		getFile().readFully(data);
+		FileChannel channel = getChannel();
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		long position = ((long) dataStart[index]) << segmentSize;
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Chunk data for " + x + ", " + z + " runs past the end of the region file");
+			}
+		}
 		return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
 	}
 
 	void write(int index, byte[] buffer, int size) throws IOException {
+		FileChannel channel = getChannel();
 		int oldStart = setInUse(index, false);
 		int start = findSpace(oldStart, size);
-		getFile().seek(start << segmentSize);
-		getFile().write(buffer, 0, size);
+		ByteBuffer data = ByteBuffer.wrap(buffer, 0, size);
+		long position = ((long) start) << segmentSize;
+		while (data.hasRemaining()) {
+			channel.write(data, position + data.position());
+		}
 		dataStart[index] = start;
 		dataActualLength[index] = size;
 		dataLength[index] = sizeToSegments(size);
 		setInUse(index, true);
-		saveFAT();
+		saveFAT(index);
 	}
 
 	public void close() {
 		try {
+			if (header != null) {
+				header.force();
+			}
 			if (file != null) {
-				file.seek(4096 * 2);
 				file.close();
 			}
-			file = null;
 		} catch (IOException ioe) {
 			throw new RuntimeException("Unable to close file", ioe);
+		} finally {
+			header = null;
+			channel = null;
+			file = null;
 		}
 	}
 
@@ -208,64 +189,51 @@ public class SimpleRegionFile {
 		int start = dataStart[index];
 		int end = start + dataLength[index];
 
-		for (int i = start; i < end; i++) {
-			while (i > inuse.size() - 1) {
-				inuse.add(false);
+		if (used) {
+			int clash = inuse.nextSetBit(start);
+			if (clash != -1 && clash < end) {
+				throw new IllegalStateException("Attempting to overwrite an in-use segment");
 			}
-			Boolean old = inuse.set(i, used);
-			if (old != null && old == used) {
-				if (old) {
-					throw new IllegalStateException("Attempting to overwrite an in-use segment");
-				} else {
-					throw new IllegalStateException("Attempting to delete empty segment");
-				}
+			inuse.set(start, end);
+		} else {
+			if (inuse.nextClearBit(start) < end) {
+				throw new IllegalStateException("Attempting to delete empty segment");
 			}
+			inuse.clear(start, end);
 		}
 
-		return dataStart[index];
+		return start;
 	}
 
 	private void extendFile() throws IOException {
-		long extend = (-getFile().length()) & segmentMask;
-
-		getFile().seek(getFile().length());
+		long length = channel.size();
+		int extend = (int) ((-length) & segmentMask);
 
-		while ((extend--) > 0) {
-			getFile().write(0);
+		if (extend > 0) {
+			ByteBuffer zeros = ByteBuffer.allocate(extend);
+			while (zeros.hasRemaining()) {
+				channel.write(zeros, length + zeros.position());
+			}
 		}
 	}
 
 	private int findSpace(int oldStart, int size) {
 		int segments = sizeToSegments(size);
 
-		boolean oldFree = true;
-		for (int i = oldStart; i < inuse.size() && i < oldStart + segments; i++) {
-			if (inuse.get(i)) {
-				oldFree = false;
-				break;
-			}
-		}
-
-		if (oldFree) {
+		int used = inuse.nextSetBit(oldStart);
+		if (used == -1 || used >= oldStart + segments) {
 			return oldStart;
 		}
 
-		int start = 0;
-		int end = 0;
-
-		while (end < inuse.size()) {
-			if (inuse.get(end)) {
-				end++;
-				start = end;
-			} else {
-				end++;
-			}
-			if (end - start >= segments) {
+		// First fit, jumping from one free run to the next
+		int start = inuse.nextClearBit(0);
+		while (true) {
+			int end = inuse.nextSetBit(start);
+			if (end == -1 || end - start >= segments) {
 				return start;
 			}
+			start = inuse.nextClearBit(end);
 		}
-
-		return start;
 	}
 
 	private int sizeToSegments(int size) {
@@ -287,14 +255,8 @@ public class SimpleRegionFile {
 		return (x << 5) + z;
 	}
 
-	private void saveFAT() throws IOException {
-		getFile().seek(0);
-		for (int i = 0; i < 1024; i++) {
-			getFile().writeInt(dataStart[i]);
-		}
-
-		for (int i = 0; i < 1024; i++) {
-			getFile().writeInt(dataActualLength[i]);
-		}
+	private void saveFAT(int index) {
+		header.putInt(index << 2, dataStart[index]);
+		header.putInt(LENGTH_OFFSET + (index << 2), dataActualLength[index]);
 	}
 }
@@ -21,6 +21,8 @@ package org.getspout.spoutapi.chunkstore;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -126,6 +128,39 @@ public class Utils {
 		return object;
 	}
 
+	/**
+	 * Writes an unsigned int using 7 bits per byte, so small values take a single byte
+	 * @param out to write to
+	 * @param value to write
+	 */
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads an int written by {@link #writeVarInt(DataOutput, int)}
+	 * @param in to read from
+	 * @return value read
+	 */
+	public static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 28) {
+				throw new IOException("Malformed variable length int");
+			}
+			b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
 	public static class SerializedData implements Serializable {
 		private static final long serialVersionUID = 1L;
 		byte[] serialData = null;
@@ -21,6 +21,7 @@ package org.getspout.spoutapi.gui;
 
 import java.io.IOException;
 import java.lang.NullPointerException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -36,14 +37,26 @@ import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.event.screen.ScreenCloseEvent;
 import org.getspout.spoutapi.io.SpoutInputStream;
 import org.getspout.spoutapi.io.SpoutOutputStream;
+import org.getspout.spoutapi.packet.PacketBatch;
 import org.getspout.spoutapi.packet.PacketWidget;
 import org.getspout.spoutapi.packet.PacketWidgetRemove;
+import org.getspout.spoutapi.packet.PreparedPacket;
+import org.getspout.spoutapi.packet.SpoutPacket;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
 public abstract class GenericScreen extends GenericWidget implements Screen {
 	protected Map<Widget, Plugin> widgets = new ConcurrentHashMap<Widget, Plugin>();
 	protected int playerId;
 	protected boolean bg = true;
+	// Payload of the last widget packet sent to the client, used to skip unchanged resends
+	protected transient Map<Widget, byte[]> lastSent = new ConcurrentHashMap<Widget, byte[]>();
+	// Attached widgets by id
+	private transient final Map<UUID, Widget> widgetIds = new ConcurrentHashMap<UUID, Widget>();
+	// Snapshot of the attached widgets, rebuilt after widgets are attached or removed
+	private transient final Object snapshotLock = new Object();
+	private transient volatile Widget[] snapshot = null;
+	// Packets of the tick in progress, screens ticked by this one add theirs here as well
+	transient PacketBatch tickBatch = null;
 
 	public GenericScreen() {
 	}
@@ -59,9 +72,31 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 
 	@Override
 	public Widget[] getAttachedWidgets() {
-		Widget[] list = new Widget[widgets.size()];
-		widgets.keySet().toArray(list);
-		return list;
+		return getWidgetSnapshot().clone();
+	}
+
+	/**
+	 * Gets the shared snapshot of the attached widgets, the returned array must not be modified
+	 * @return attached widgets
+	 */
+	private Widget[] getWidgetSnapshot() {
+		Widget[] snapshot = this.snapshot;
+		if (snapshot == null) {
+			synchronized (snapshotLock) {
+				snapshot = this.snapshot;
+				if (snapshot == null) {
+					snapshot = widgets.keySet().toArray(new Widget[widgets.size()]);
+					this.snapshot = snapshot;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	private void invalidateSnapshot() {
+		synchronized (snapshotLock) {
+			snapshot = null;
+		}
 	}
 
 	@Override
@@ -69,6 +104,9 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 		if (plugin == null) throw new NullPointerException("Plugin can not be null!");
 		if (widget == null) throw new NullPointerException("Widget can not be null!");
 		widgets.put(widget, plugin);
+		widgetIds.put(widget.getId(), widget);
+		invalidateSnapshot();
+		lastSent.remove(widget);
 		widget.setPlugin(plugin);
 		widget.setDirty(true);
 		widget.setScreen(this);
@@ -89,6 +127,9 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 		if (player != null) {
 			if (widgets.containsKey(widget)) {
 				widgets.remove(widget);
+				widgetIds.remove(widget.getId());
+				invalidateSnapshot();
+				lastSent.remove(widget);
 				if (!widget.getType().isServerOnly()) {
 					SpoutManager.getPlayerFromId(playerId).sendImmediatePacket(new PacketWidgetRemove(widget, getId()));
 				}
@@ -122,12 +163,7 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 
 	@Override
 	public Widget getWidget(UUID id) {
-		for (Widget w : widgets.keySet()) {
-			if (w.getId().equals(id)) {
-				return w;
-			}
-		}
-		return null;
+		return widgetIds.get(id);
 	}
 
 	@Override
@@ -136,6 +172,8 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 			Plugin plugin = widgets.get(widget);
 			widgets.remove(widget);
 			widgets.put(widget, plugin);
+			widgetIds.put(widget.getId(), widget);
+			invalidateSnapshot();
 			widget.setScreen(this);
 			return true;
 		}
@@ -146,23 +184,28 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 	public void onTick() {
 		SpoutPlayer player = SpoutManager.getPlayerFromId(playerId);
 		if (player != null) {
-			// Create a copy because onTick may remove the widget
-			Set<Widget> widgetCopy = new HashSet<Widget>(widgets.keySet());
-			for (Widget widget : widgetCopy) {
+			// The snapshot stays the same when onTick removes the widget
+			Widget[] attached = getWidgetSnapshot();
+			for (Widget widget : attached) {
 				try {
 					widget.onTick();
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
 			}
-			for (Widget widget : widgets.keySet()) {
+			attached = getWidgetSnapshot();
+			for (Widget widget : attached) {
 				try {
 					widget.onAnimate();
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
 			}
-			for (Widget widget : widgets.keySet()) {
+			// A screen ticked by its parent screen sends its packets with those of the parent
+			Screen parent = getScreen();
+			boolean nested = parent instanceof GenericScreen && ((GenericScreen) parent).tickBatch != null;
+			PacketBatch batch = nested ? ((GenericScreen) parent).tickBatch : tickBatch;
+			for (Widget widget : attached) {
 				if (widget.isDirty()) {
 					if (!widget.hasSize()/* || !widget.hasPosition()*/) {
 						String type = "Unknown";
@@ -180,12 +223,43 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 						widget.setHeight(widget.getHeight());
 					}
 					if (!widget.getType().isServerOnly()) {
-						player.sendImmediatePacket(new PacketWidget(widget, getId()));
+						SpoutPacket packet = prepareWidget(widget);
+						if (packet != null) {
+							if (batch == null) {
+								batch = new PacketBatch();
+							}
+							batch.add(packet);
+						}
 					}
 					widget.setDirty(false);
 				}
 			}
+			tickBatch = null;
+			if (!nested && batch != null && batch.size() > 0) {
+				// All changed widgets of this screen go out together
+				player.sendImmediatePacket(batch.size() == 1 ? batch.getPackets().get(0) : batch);
+			}
+		}
+	}
+
+	/**
+	 * Serializes the widget for the player, unless the client already has the exact same data for it.
+	 *
+	 * Controls are always sent, since the client changes their state without telling the screen.
+	 * @param widget to send
+	 * @return packet to send, or null if the widget did not change
+	 */
+	protected SpoutPacket prepareWidget(Widget widget) {
+		PreparedPacket packet = new PreparedPacket(new PacketWidget(widget, getId()));
+		if (widget instanceof Control) {
+			return packet;
 		}
+		byte[] data = packet.getData();
+		if (Arrays.equals(lastSent.get(widget), data)) {
+			return null;
+		}
+		lastSent.put(widget, data);
+		return packet;
 	}
 
 	@Override
@@ -220,7 +294,11 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 	public void setDirty(boolean dirty) {
 		super.setDirty(dirty);
 		if (dirty) {
-			for (Widget widget : getAttachedWidgets()) {
+			// The client rebuilds the screen, so every widget has to be sent again
+			if (lastSent != null) {
+				lastSent.clear();
+			}
+			for (Widget widget : getWidgetSnapshot()) {
 				widget.setDirty(true);
 			}
 		}
@@ -234,7 +312,7 @@ public abstract class GenericScreen extends GenericWidget implements Screen {
 	@Override
 	public Set<Widget> getAttachedWidgetsAsSet(boolean recursive) {
 		Set<Widget> set = new HashSet<Widget>();
-		for (Widget w : widgets.keySet()) {
+		for (Widget w : getWidgetSnapshot()) {
 			set.add(w);
 			if (w instanceof Screen && recursive) {
 				set.addAll(((Screen) w).getAttachedWidgetsAsSet(true));
@@ -27,6 +27,7 @@ import org.bukkit.plugin.Plugin;
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.event.screen.ScreenCloseEvent;
 import org.getspout.spoutapi.event.screen.ScreenOpenEvent;
+import org.getspout.spoutapi.packet.PacketBatch;
 import org.getspout.spoutapi.packet.PacketScreenAction;
 import org.getspout.spoutapi.packet.PacketWidget;
 import org.getspout.spoutapi.packet.ScreenAction;
@@ -61,14 +62,17 @@ public class InGameScreen extends GenericScreen implements InGameHUD {
 	public void onTick() {
 		SpoutPlayer player = (SpoutPlayer) SpoutManager.getPlayerFromId(playerId);
 		if (player != null && player.isSpoutCraftEnabled()) {
-			if (getActivePopup() != null) {
-				if (getActivePopup().isDirty()) {
-					if (!getActivePopup().getType().isServerOnly()) {
-						player.sendImmediatePacket(new PacketWidget(getActivePopup(), getId()));
+			PopupScreen popup = getActivePopup();
+			if (popup != null) {
+				// The popup and its widgets are sent in the same batch as the widgets of this screen
+				tickBatch = new PacketBatch();
+				if (popup.isDirty()) {
+					if (!popup.getType().isServerOnly()) {
+						tickBatch.add(new PacketWidget(popup, getId()));
 					}
-					getActivePopup().setDirty(false);
+					popup.setDirty(false);
 				}
-				getActivePopup().onTick();
+				popup.onTick();
 			}
 		}
 		super.onTick();
@@ -22,13 +22,23 @@ package org.getspout.spoutapi.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.getspout.spoutapi.io.store.FlatFileStore;
 
 public class CRCStore {
+	private static final int CONNECT_TIMEOUT = 10000;
+	private static final int READ_TIMEOUT = 30000;
 	private static FlatFileStore<String> urlCRCStore;
 	private final static Object urlCRCStoreSync = new Object();
 	private final static ConcurrentHashMap<String,Long> lastCheck = new ConcurrentHashMap<String,Long>();
@@ -73,10 +83,18 @@ public class CRCStore {
 			}
 		}
 
+		// Checked within the last 10 mins, no need to connect at all
+		Long checked = lastCheck.get(urlString);
+		if (crc != 0 && checked != null && System.currentTimeMillis() - checked <= 600000) {
+			return crc;
+		}
+
 		URLConnection urlConn = null;
 		InputStream in = null;
 		try {
 			urlConn = url.openConnection();
+			urlConn.setConnectTimeout(CONNECT_TIMEOUT);
+			urlConn.setReadTimeout(READ_TIMEOUT);
 		} catch (IOException ioe) {
 			return 0;
 		}
@@ -106,6 +124,11 @@ public class CRCStore {
 				return crc;
 			} else {
 				crc = FileUtil.getCRC(in, buffer);
+				if (crc == 0) {
+					// The download failed or timed out part way through, don't cache it
+					lastCheck.remove(urlString);
+					return 0;
+				}
 				info = urlLastModified + ":" + crc;
 				if (urlCRCStore == null) {
 					System.out.println("[SpoutPlugin] Attempted to create CRC for URL " + urlString + " before urlCRCStore was initialized!");
@@ -117,6 +140,9 @@ public class CRCStore {
 				}
 				return crc;
 			}
+		} catch (SocketTimeoutException ste) {
+			lastCheck.remove(urlString);
+			return 0;
 		} catch (IOException ioe) {
 			crc = FileUtil.getCRC(in, buffer);
 			synchronized(urlCRCStoreSync) {
@@ -134,8 +160,95 @@ public class CRCStore {
 		}
 	}
 
-	private static ConcurrentHashMap<String,Thread> CRCDownloads = new ConcurrentHashMap<String,Thread>();
+	private static final int URL_CHECK_THREADS = 4;
+	private static final ConcurrentHashMap<String, URLLookup> lookups = new ConcurrentHashMap<String, URLLookup>();
+	private static ThreadPoolExecutor urlCheckExecutor = null;
+
+	/**
+	 * Resolves the CRC of a URL on a small shared pool of threads and then runs the callback on that thread.
+	 * <p/>
+	 * Lookups of a URL that is already being resolved share the same download.
+	 * @param urlString to get the CRC of
+	 * @param callback that is given the CRC, 0 on failure, and then run
+	 */
+	public static void getCRCAsync(String urlString, CRCStoreRunnable callback) {
+		while (true) {
+			URLLookup lookup = lookups.get(urlString);
+			if (lookup == null) {
+				URLLookup created = new URLLookup(urlString);
+				created.addCallback(callback);
+				lookup = lookups.putIfAbsent(urlString, created);
+				if (lookup == null) {
+					getURLCheckExecutor().execute(created);
+					return;
+				}
+			}
+			if (lookup.addCallback(callback)) {
+				return;
+			}
+			// The lookup finished while we were joining it
+			lookups.remove(urlString, lookup);
+		}
+	}
 
+	private static synchronized ThreadPoolExecutor getURLCheckExecutor() {
+		if (urlCheckExecutor == null) {
+			urlCheckExecutor = new ThreadPoolExecutor(URL_CHECK_THREADS, URL_CHECK_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Spout URL CRC Check");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			urlCheckExecutor.allowCoreThreadTimeOut(true);
+		}
+		return urlCheckExecutor;
+	}
+
+	private static class URLLookup implements Runnable {
+		private final String url;
+		private final List<CRCStoreRunnable> callbacks = new ArrayList<CRCStoreRunnable>(1);
+		private boolean done = false;
+
+		URLLookup(String url) {
+			this.url = url;
+		}
+
+		synchronized boolean addCallback(CRCStoreRunnable callback) {
+			if (done) {
+				return false;
+			}
+			callbacks.add(callback);
+			return true;
+		}
+
+		public void run() {
+			long crc = 0;
+			try {
+				crc = CRCStore.getCRC(url, new byte[4096]);
+			} finally {
+				lookups.remove(url, this);
+				synchronized (this) {
+					done = true;
+				}
+				for (CRCStoreRunnable callback : callbacks) {
+					try {
+						callback.setCRC(crc);
+						callback.run();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resolves the CRC of a URL and then runs the runnable, the thread finishes once the runnable has run.
+	 * <p/>
+	 * The download itself is made through {@link #getCRCAsync(String, CRCStoreRunnable)}.
+	 */
 	public static class URLCheck extends Thread {
 		final String url;
 		final CRCStoreRunnable runnable;
@@ -148,36 +261,27 @@ public class CRCStore {
 		}
 
 		public void run() {
-			Thread downloadThread = CRCDownloads.get(url);
-
-			if (downloadThread == null) {
-				Thread old = CRCDownloads.putIfAbsent(url, this);
-				if (old != null) {
-					downloadThread = old;
-				} else {
-					downloadThread = this;
+			final CountDownLatch latch = new CountDownLatch(1);
+			getCRCAsync(url, new CRCStoreRunnable() {
+				public void setCRC(Long CRC) {
+					if (runnable != null) {
+						runnable.setCRC(CRC);
+					}
 				}
-			}
 
-			if (downloadThread != this) {
-				try {
-					downloadThread.join();
-				} catch (InterruptedException e) {
+				public void run() {
+					try {
+						if (runnable != null) {
+							runnable.run();
+						}
+					} finally {
+						latch.countDown();
+					}
 				}
-			}
-
-			Long crc = null;
-			crc = CRCStore.getCRC(url, buffer);
-
-			if (crc == null) {
-				crc = 0L;
-			}
-
-			CRCDownloads.remove(url, this);
-
-			if (runnable != null) {
-				runnable.setCRC(crc);
-				runnable.run();
+			});
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
 			}
 		}
 	}
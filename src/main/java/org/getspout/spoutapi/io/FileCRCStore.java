@@ -0,0 +1,150 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spoutapi.io;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the CRC of local files, keyed on their path, size and modification time.
+ * <p/>
+ * A file is only read again once its size or modification time changes. The index is kept in memory and can be saved
+ * to disk so it survives restarts.
+ */
+public class FileCRCStore {
+	private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final static Object saveSync = new Object();
+	private static File indexFile = null;
+	private static volatile boolean dirty = false;
+
+	/**
+	 * Sets the file the index is stored in and loads the entries stored there
+	 * @param file to store the index in
+	 */
+	public static void setIndexFile(File file) {
+		synchronized (saveSync) {
+			indexFile = file;
+			entries.clear();
+			dirty = false;
+			Collection<String> lines = file.exists() ? FileUtil.fileToString(file) : null;
+			if (lines == null) {
+				return;
+			}
+			for (String line : lines) {
+				// length, modified, crc and then the path, which may contain tabs itself
+				String[] split = line.split("\t", 4);
+				if (split.length != 4) {
+					continue;
+				}
+				try {
+					entries.put(split[3], new Entry(Long.parseLong(split[0]), Long.parseLong(split[1]), Long.parseLong(split[2])));
+				} catch (NumberFormatException nfe) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the CRC of a file, only reading the file if it changed since its CRC was last computed
+	 * @param file to get the CRC of
+	 * @param buffer for temporary data
+	 * @return the CRC or 0 on failure
+	 */
+	public static long getCRC(File file, byte[] buffer) {
+		String key = file.getAbsolutePath();
+		long length = file.length();
+		long modified = file.lastModified();
+		if (modified == 0 && !file.exists()) {
+			entries.remove(key);
+			return 0;
+		}
+
+		Entry entry = entries.get(key);
+		if (entry != null && entry.length == length && entry.modified == modified) {
+			return entry.crc;
+		}
+
+		long crc = FileUtil.getCRC(file, buffer);
+		if (crc != 0) {
+			entries.put(key, new Entry(length, modified, crc));
+			dirty = true;
+		}
+		return crc;
+	}
+
+	/**
+	 * Records the CRC of a file that was just written, so it does not have to be read back
+	 * @param file that was written
+	 * @param crc of the contents written
+	 */
+	public static void setCRC(File file, long crc) {
+		entries.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), crc));
+		dirty = true;
+	}
+
+	/**
+	 * Forgets the CRC of a file, the next lookup reads the file again
+	 * @param file to forget
+	 */
+	public static void invalidate(File file) {
+		if (entries.remove(file.getAbsolutePath()) != null) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Saves the index if any entries changed since it was loaded or last saved
+	 * @return true on success
+	 */
+	public static boolean save() {
+		synchronized (saveSync) {
+			if (!dirty || indexFile == null) {
+				return true;
+			}
+			dirty = false;
+			ArrayList<String> lines = new ArrayList<String>(entries.size());
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry entry = e.getValue();
+				lines.add(entry.length + "\t" + entry.modified + "\t" + entry.crc + "\t" + e.getKey());
+			}
+			File temp = new File(indexFile.getPath() + ".tmp");
+			boolean saved = FileUtil.stringToFile(lines, temp) && FileUtil.replaceFile(temp, indexFile);
+			if (!saved) {
+				dirty = true;
+			}
+			return saved;
+		}
+	}
+
+	private static final class Entry {
+		private final long length;
+		private final long modified;
+		private final long crc;
+
+		Entry(long length, long modified, long crc) {
+			this.length = length;
+			this.modified = modified;
+			this.crc = crc;
+		}
+	}
+}
@@ -246,6 +246,24 @@ public class FileUtil {
 		return FileUtil.stringToFile(emptyCollection, file);
 	}
 
+	/**
+	 * Replaces a file with another file, by renaming the source over the target
+	 *
+	 * @param source the file to move
+	 * @param target the file to replace
+	 * @return true on success
+	 */
+	public static boolean replaceFile(File source, File target) {
+		if (source.renameTo(target)) {
+			return true;
+		}
+		// Some platforms can not rename over an existing file
+		if (target.exists() && !target.delete()) {
+			return false;
+		}
+		return source.renameTo(target);
+	}
+
 	/**
 	 * Copies one file to another location
 	 *
@@ -22,6 +22,8 @@ package org.getspout.spoutapi.io;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bukkit.Location;
 import org.bukkit.block.Block;
@@ -32,11 +34,46 @@ import org.getspout.spoutapi.gui.Color;
 import org.getspout.spoutapi.material.Material;
 
 public class SpoutOutputStream extends OutputStream {
+	private static final int POOL_SIZE = 64;
+	private static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+	private static final ConcurrentLinkedQueue<SpoutOutputStream> pool = new ConcurrentLinkedQueue<SpoutOutputStream>();
+	private static final AtomicInteger pooled = new AtomicInteger();
+
 	ByteBuffer buffer = ByteBuffer.allocate(256);
 
 	public SpoutOutputStream() {
 	}
 
+	/**
+	 * Gets an empty stream from the shared pool, or a new stream if the pool is empty.
+	 * <p/>
+	 * The stream should be handed back with {@link #release()} once its contents have been written out.
+	 * @return empty stream
+	 */
+	public static SpoutOutputStream obtain() {
+		SpoutOutputStream stream = pool.poll();
+		if (stream == null) {
+			return new SpoutOutputStream();
+		}
+		pooled.decrementAndGet();
+		return stream;
+	}
+
+	/**
+	 * Returns this stream to the shared pool. The stream must not be used after it has been released.
+	 */
+	public void release() {
+		if (buffer.capacity() > MAX_POOLED_CAPACITY) {
+			return;
+		}
+		buffer.clear();
+		if (pooled.incrementAndGet() <= POOL_SIZE) {
+			pool.offer(this);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+
 	public void writeBlock(Block block) {
 		this.writeInt(block.getX());
 		this.writeInt(block.getY());
@@ -79,67 +116,49 @@ public class SpoutOutputStream extends OutputStream {
 
 	@Override
 	public void write(byte[] b) {
-		while (buffer.remaining() < b.length) {
-			expand();
-		}
+		ensureCapacity(b.length);
 		buffer.put(b);
 	}
 
 	@Override
-	public void write(byte[] b, int len, int off) {
-		while (buffer.remaining() < b.length) {
-			expand();
-		}
-		buffer.put(b, len, off);
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(len);
+		buffer.put(b, off, len);
 	}
 
 	@Override
 	public void write(int b) {
-		if (buffer.remaining() < 1) {
-			expand();
-		}
+		ensureCapacity(1);
 		buffer.put((byte) b);
 	}
 
 	public void writeShort(short s) {
-		if (buffer.remaining() < 2) {
-			expand();
-		}
+		ensureCapacity(2);
 		buffer.putShort(s);
 	}
 
 	public void writeInt(int i) {
-		if (buffer.remaining() < 4) {
-			expand();
-		}
+		ensureCapacity(4);
 		buffer.putInt(i);
 	}
 
 	public void writeLong(long l) {
-		if (buffer.remaining() < 8) {
-			expand();
-		}
+		ensureCapacity(8);
 		buffer.putLong(l);
 	}
 
 	public void writeFloat(float f) {
-		if (buffer.remaining() < 4) {
-			expand();
-		}
+		ensureCapacity(4);
 		buffer.putFloat(f);
 	}
 
 	public void writeDouble(double d) {
-		if (buffer.remaining() < 8) {
-			expand();
-		}
+		ensureCapacity(8);
 		buffer.putDouble(d);
 	}
 
 	public void writeChar(char ch) {
-		if (buffer.remaining() < 2) {
-			expand();
-		}
+		ensureCapacity(2);
 		buffer.putChar(ch);
 	}
 
@@ -148,9 +167,7 @@ public class SpoutOutputStream extends OutputStream {
 	}
 
 	public void writeString(String s) {
-		while (buffer.remaining() < (2 + s.length() * 2)) {
-			expand();
-		}
+		ensureCapacity(2 + s.length() * 2);
 		buffer.putShort((short) s.length());
 		for (int i = 0; i < s.length(); i++) {
 			buffer.putChar(s.charAt(i));
@@ -173,14 +190,46 @@ public class SpoutOutputStream extends OutputStream {
 		writeInt(c.toInt());
 	}
 
+	/**
+	 * Reserves space for an int that is filled in later with {@link #setInt(int, int)}.
+	 * <p/>
+	 * This allows a length prefix to be written before a nested payload without copying the payload.
+	 * @return position of the reserved int
+	 */
+	public int reserveInt() {
+		ensureCapacity(4);
+		int position = buffer.position();
+		buffer.putInt(0);
+		return position;
+	}
+
+	/**
+	 * Overwrites the int at the given position, without moving the write position
+	 * @param position of the int, as returned by {@link #reserveInt()}
+	 * @param i value to write
+	 */
+	public void setInt(int position, int i) {
+		buffer.putInt(position, i);
+	}
+
+	/**
+	 * Gets the number of bytes written to this stream
+	 * @return bytes written
+	 */
+	public int getPosition() {
+		return buffer.position();
+	}
+
 	public ByteBuffer getRawBuffer() {
 		return buffer;
 	}
 
-	private void expand() {
-		ByteBuffer replacement = ByteBuffer.allocate(buffer.capacity() * 2);
-		replacement.put(buffer.array());
-		replacement.position(buffer.position());
-		buffer = replacement;
+	private void ensureCapacity(int bytes) {
+		if (buffer.remaining() < bytes) {
+			int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+			ByteBuffer replacement = ByteBuffer.allocate(capacity);
+			replacement.put(buffer.array(), 0, buffer.position());
+			buffer = replacement;
+		}
 	}
 }
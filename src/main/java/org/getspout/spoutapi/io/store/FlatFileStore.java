@@ -56,7 +56,9 @@ public class FlatFileStore<T> extends MemoryStore<T> implements SimpleStore<T> {
 	public boolean save() {
 		if (dirty) {
 			Collection<String> strings = getStrings();
-			boolean saved = FileUtil.stringToFile(strings, file);
+			// Write to a temporary file first so a failed save never leaves a truncated store behind
+			File temp = new File(file.getPath() + ".tmp");
+			boolean saved = FileUtil.stringToFile(strings, temp) && FileUtil.replaceFile(temp, file);
 			if (saved) {
 				dirty = false;
 			}
@@ -23,11 +23,10 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-
-import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bukkit.plugin.Plugin;
 import org.getspout.spoutapi.SpoutManager;
@@ -55,11 +54,18 @@ import org.getspout.spoutapi.material.item.SpawnEgg;
 
 public class MaterialData {
 	private final static Object[] idLookup = new Object[3200];
-	private final static List<CustomBlock> customBlocks = new LinkedList<CustomBlock>();
-	private final static List<CustomItem> customItems = new LinkedList<CustomItem>();
-	private final static TIntObjectHashMap<CustomItem> customItemLookup = new TIntObjectHashMap<CustomItem>(250);
-	private final static TIntObjectHashMap<CustomBlock> customBlockLookup = new TIntObjectHashMap<CustomBlock>(250);
+	// Custom materials are changed under the lock, readers use array snapshots that are rebuilt after a change
+	private final static Object customLock = new Object();
+	private final static ArrayList<CustomBlock> customBlockList = new ArrayList<CustomBlock>();
+	private final static ArrayList<CustomItem> customItemList = new ArrayList<CustomItem>();
+	private static volatile CustomBlock[] customBlocks = null;
+	private static volatile CustomItem[] customItems = null;
+	private static volatile CustomBlock[] customBlockLookup = new CustomBlock[0];
+	private static volatile CustomItem[] customItemLookup = new CustomItem[0];
+	private final static HashMap<Plugin, List<CustomBlock>> pluginBlocks = new HashMap<Plugin, List<CustomBlock>>();
+	private final static int MAX_CUSTOM_ID = 65536;
 	private final static HashMap<String, Material> nameLookup = new HashMap<String, Material>(1000);
+	private final static AtomicInteger customRevision = new AtomicInteger();
 	private final static int FLINT_ID = 318;
 	public static final Block air = new Air("Air");
 	public static final Block stone = new Solid("Stone", 1);
@@ -602,10 +608,16 @@ public class MaterialData {
 			idLookup[i] = null;
 		}
 		nameLookup.clear();
-		customBlocks.clear();
-		customBlockLookup.clear();
-		customItems.clear();
-		customItemLookup.clear();
+		synchronized (customLock) {
+			customBlockList.clear();
+			customBlocks = null;
+			customBlockLookup = new CustomBlock[0];
+			customItemList.clear();
+			customItems = null;
+			customItemLookup = new CustomItem[0];
+			pluginBlocks.clear();
+			customRevision.incrementAndGet();
+		}
 
 		Field[] fields = MaterialData.class.getFields();
 		for (Field f : fields) {
@@ -669,9 +681,22 @@ public class MaterialData {
 	 * @param item to add
 	 */
 	public static void addCustomItem(CustomItem item) {
-		customItemLookup.put(item.getCustomId(), item);
-		customItems.add(item);
-		nameLookup.put(item.getNotchianName().toLowerCase(), item);
+		synchronized (customLock) {
+			int id = item.getCustomId();
+			if (id > -1 && id < MAX_CUSTOM_ID) {
+				CustomItem[] lookup = customItemLookup;
+				if (id >= lookup.length) {
+					lookup = Arrays.copyOf(lookup, getLookupSize(lookup.length, id));
+				}
+				lookup[id] = item;
+				// Written again even when unchanged, so readers of the field see the new entry
+				customItemLookup = lookup;
+			}
+			customItemList.add(item);
+			customItems = null;
+			nameLookup.put(item.getNotchianName().toLowerCase(), item);
+			customRevision.incrementAndGet();
+		}
 		SpoutManager.getMaterialManager().onCustomMaterialRegistered(item);
 	}
 
@@ -680,12 +705,59 @@ public class MaterialData {
 	 * @param block to add
 	 */
 	public static void addCustomBlock(CustomBlock block) {
-		customBlockLookup.put(block.getCustomId(), block);
-		customBlocks.add(block);
-		nameLookup.put(block.getNotchianName().toLowerCase(), block);
+		synchronized (customLock) {
+			int id = block.getCustomId();
+			if (id > -1 && id < MAX_CUSTOM_ID) {
+				CustomBlock[] lookup = customBlockLookup;
+				if (id >= lookup.length) {
+					lookup = Arrays.copyOf(lookup, getLookupSize(lookup.length, id));
+				}
+				lookup[id] = block;
+				// Written again even when unchanged, so readers of the field see the new entry
+				customBlockLookup = lookup;
+			}
+			customBlockList.add(block);
+			customBlocks = null;
+			Plugin plugin = block.getPlugin();
+			if (plugin != null) {
+				List<CustomBlock> owned = pluginBlocks.get(plugin);
+				if (owned == null) {
+					owned = new ArrayList<CustomBlock>();
+					pluginBlocks.put(plugin, owned);
+				}
+				owned.add(block);
+			}
+			nameLookup.put(block.getNotchianName().toLowerCase(), block);
+			customRevision.incrementAndGet();
+		}
 		SpoutManager.getMaterialManager().onCustomMaterialRegistered(block);
 	}
 
+	/**
+	 * Grows a custom id lookup so it can hold the given id, doubling it to keep resizes rare
+	 */
+	private static int getLookupSize(int length, int id) {
+		return Math.min(MAX_CUSTOM_ID, Math.max(id + 1, Math.max(length * 2, 2048)));
+	}
+
+	/**
+	 * Marks the custom materials as changed, so anything built from their serialized form is rebuilt
+	 * <p/>
+	 * Custom materials should call this whenever a property they write to the client changes after registration.
+	 * Changes made without calling it are still sent to joining players, found by serializing the materials again.
+	 */
+	public static void onCustomMaterialChanged() {
+		customRevision.incrementAndGet();
+	}
+
+	/**
+	 * Gets the revision of the custom materials, which changes whenever one is added, changed, or the materials are reset
+	 * @return revision
+	 */
+	public static int getCustomMaterialRevision() {
+		return customRevision.get();
+	}
+
 	/**
 	 * @param Gets the material from the given id
 	 * @return material, or null if none found
@@ -800,9 +872,16 @@ public class MaterialData {
 	 * @return all registered custom blocks
 	 */
 	public static CustomBlock[] getCustomBlocks() {
-		CustomBlock[] blocks = new CustomBlock[customBlocks.size()];
-		for (int i = 0; i < blocks.length; i++) {
-			blocks[i] = customBlocks.get(i);
+		return getCustomBlockSnapshot().clone();
+	}
+
+	private static CustomBlock[] getCustomBlockSnapshot() {
+		CustomBlock[] blocks = customBlocks;
+		if (blocks == null) {
+			synchronized (customLock) {
+				blocks = customBlockList.toArray(new CustomBlock[customBlockList.size()]);
+				customBlocks = blocks;
+			}
 		}
 		return blocks;
 	}
@@ -813,13 +892,13 @@ public class MaterialData {
 	 * @return custom block list for given plugin
 	 */
 	public static List<CustomBlock> getCustomBlocks(Plugin plugin) {
-		List<CustomBlock> blocks = new ArrayList<CustomBlock>();
-		for (CustomBlock block : customBlocks) {
-			if (block.getPlugin().equals(plugin)) {
-				blocks.add(block);
+		synchronized (customLock) {
+			List<CustomBlock> blocks = plugin == null ? null : pluginBlocks.get(plugin);
+			if (blocks == null) {
+				return new ArrayList<CustomBlock>();
 			}
+			return new ArrayList<CustomBlock>(blocks);
 		}
-		return blocks;
 	}
 
 	/**
@@ -827,9 +906,16 @@ public class MaterialData {
 	 * @return all registered custom items
 	 */
 	public static CustomItem[] getCustomItems() {
-		CustomItem[] items = new CustomItem[customItems.size()];
-		for (int i = 0; i < items.length; i++) {
-			items[i] = customItems.get(i);
+		return getCustomItemSnapshot().clone();
+	}
+
+	private static CustomItem[] getCustomItemSnapshot() {
+		CustomItem[] items = customItems;
+		if (items == null) {
+			synchronized (customLock) {
+				items = customItemList.toArray(new CustomItem[customItemList.size()]);
+				customItems = items;
+			}
 		}
 		return items;
 	}
@@ -840,7 +926,11 @@ public class MaterialData {
 	 * @return
 	 */
 	public static CustomBlock getCustomBlock(int customId) {
-		return customBlockLookup.get(customId);
+		CustomBlock[] lookup = customBlockLookup;
+		if (customId > -1 && customId < lookup.length) {
+			return lookup[customId];
+		}
+		return null;
 	}
 
 	/**
@@ -849,7 +939,11 @@ public class MaterialData {
 	 * @return custom item
 	 */
 	public static CustomItem getCustomItem(int customId) {
-		return customItemLookup.get(customId);
+		CustomItem[] lookup = customItemLookup;
+		if (customId > -1 && customId < lookup.length) {
+			return lookup[customId];
+		}
+		return null;
 	}
 
 	/**
@@ -880,7 +974,9 @@ public class MaterialData {
 	 * @return a list of all materials
 	 */
 	public static List<Material> getMaterials() {
-		LinkedList<Material> materials = new LinkedList<Material>();
+		CustomBlock[] blocks = getCustomBlockSnapshot();
+		CustomItem[] items = getCustomItemSnapshot();
+		ArrayList<Material> materials = new ArrayList<Material>(nameLookup.size() + blocks.length + items.length);
 		for (int i = 0; i < idLookup.length; i++) {
 			if (idLookup[i] instanceof Material) {
 				materials.add((Material) idLookup[i]);
@@ -892,8 +988,8 @@ public class MaterialData {
 				}
 			}
 		}
-		materials.addAll(customBlocks);
-		materials.addAll(customItems);
+		materials.addAll(Arrays.asList(blocks));
+		materials.addAll(Arrays.asList(items));
 		return materials;
 	}
 
@@ -928,7 +1024,7 @@ public class MaterialData {
 		if (id == null) {
 			return null;
 		}
-		return customBlockLookup.get(id);
+		return getCustomBlock(id);
 	}
 
 	/**
@@ -953,6 +1049,6 @@ public class MaterialData {
 		if (id == null) {
 			return null;
 		}
-		return customItemLookup.get(id);
+		return getCustomItem(id);
 	}
 }
@@ -447,6 +447,7 @@ public class GenericCustomBlock extends GenericBlock implements CustomBlock, Spo
 	public CustomBlock setHardness(float hardness) {
         super.setHardness(hardness);
 		this.hardness = hardness;
+		MaterialData.onCustomMaterialChanged();
 		return this;
 	}
 
@@ -459,6 +460,7 @@ public class GenericCustomBlock extends GenericBlock implements CustomBlock, Spo
 	public CustomBlock setFriction(float friction) {
         super.setFriction(friction);
 		this.friction = friction;
+		MaterialData.onCustomMaterialChanged();
 		return this;
 	}
 
@@ -471,6 +473,7 @@ public class GenericCustomBlock extends GenericBlock implements CustomBlock, Spo
 	public CustomBlock setLightLevel(int level) {
         super.setLightLevel(level);
 		lightLevel = level;
+		MaterialData.onCustomMaterialChanged();
 		return this;
 	}
 
@@ -80,6 +80,7 @@ public class GenericCustomItem extends GenericItem implements CustomItem, SpoutP
 	public void setName(String name) {
 		super.setName(name);
 		mm.setItemName(this, name);
+		MaterialData.onCustomMaterialChanged();
 	}
 
 	@Override
@@ -108,6 +109,7 @@ public class GenericCustomItem extends GenericItem implements CustomItem, SpoutP
 			SpoutManager.getFileManager().addToCache(plugin, texture);
 		}
 		this.texture = texture;
+		MaterialData.onCustomMaterialChanged();
 		return this;
 	}
 
@@ -47,6 +47,7 @@ public class GenericCustomTool extends GenericCustomItem implements Tool {
 	@Override
 	public Tool setMaxDurability(short durability) {
 		maxdurability = durability;
+		MaterialData.onCustomMaterialChanged();
 		return this;
 	}
 
@@ -66,6 +67,7 @@ public class GenericCustomTool extends GenericCustomItem implements Tool {
 	@Override
 	public Tool setStrengthModifier(Block block, float modifier) {
 		strengthMods.put(block, modifier);
+		MaterialData.onCustomMaterialChanged();
 		return this;
 	}
 
@@ -0,0 +1,51 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spoutapi.packet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the payload bytes passed through {@link CompressiblePacket#compress()}
+ */
+public final class CompressionStats {
+	private static final AtomicLong uncompressedBytes = new AtomicLong();
+	private static final AtomicLong compressedBytes = new AtomicLong();
+
+	private CompressionStats() {
+	}
+
+	/**
+	 * Records the size of a payload before and after it was compressed
+	 * @param before length of the payload before compression
+	 * @param after length of the payload after compression
+	 */
+	public static void record(long before, long after) {
+		uncompressedBytes.addAndGet(before);
+		compressedBytes.addAndGet(after);
+	}
+
+	public static long getUncompressedBytes() {
+		return uncompressedBytes.get();
+	}
+
+	public static long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+}
@@ -45,14 +45,14 @@ public class PacketAddonData implements CompressiblePacket {
 
 	public PacketAddonData(AddonPacket packet) {
 		this.packet = packet;
-		SpoutOutputStream stream = new SpoutOutputStream();
+		SpoutOutputStream stream = SpoutOutputStream.obtain();
 		try {
 			packet.write(stream);
 		} catch (Exception e) {
 		}
-		ByteBuffer buffer = stream.getRawBuffer();
-		data = new byte[buffer.capacity() - buffer.remaining()];
-		System.arraycopy(buffer.array(), 0, data, 0, data.length);
+		data = new byte[stream.getPosition()];
+		System.arraycopy(stream.getRawBuffer().array(), 0, data, 0, data.length);
+		stream.release();
 		needsCompression = data.length > 512;
 	}
 
@@ -138,6 +138,7 @@ public class PacketAddonData implements CompressiblePacket {
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
+				CompressionStats.record(data.length, bos.size());
 				data = bos.toByteArray();
 			}
 			compressed = true;
@@ -0,0 +1,107 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spoutapi.packet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.getspout.spoutapi.io.SpoutInputStream;
+import org.getspout.spoutapi.io.SpoutOutputStream;
+
+/**
+ * A group of packets that is queued and flushed to the connection as a single unit.
+ * <p/>
+ * Each packet keeps its own frame on the wire, in the order it was added, so the client reads them as if they
+ * were sent one by one.
+ */
+public final class PacketBatch implements SpoutPacket {
+	private final List<SpoutPacket> packets;
+
+	public PacketBatch() {
+		this.packets = new ArrayList<SpoutPacket>();
+	}
+
+	public PacketBatch(int capacity) {
+		this.packets = new ArrayList<SpoutPacket>(capacity);
+	}
+
+	/**
+	 * Adds a packet to the end of this batch
+	 * @param packet to add
+	 * @return this batch
+	 */
+	public PacketBatch add(SpoutPacket packet) {
+		if (packet == null) {
+			throw new IllegalArgumentException("Packet can not be null");
+		}
+		if (packet instanceof PacketBatch) {
+			packets.addAll(((PacketBatch) packet).getPackets());
+		} else {
+			packets.add(packet);
+		}
+		return this;
+	}
+
+	/**
+	 * Gets the packets of this batch, in the order they will be sent
+	 * @return packets
+	 */
+	public List<SpoutPacket> getPackets() {
+		return Collections.unmodifiableList(packets);
+	}
+
+	public int size() {
+		return packets.size();
+	}
+
+	public boolean isEmpty() {
+		return packets.isEmpty();
+	}
+
+	@Override
+	public void readData(SpoutInputStream input) throws IOException {
+		throw new IOException("Packet batches can only be sent");
+	}
+
+	@Override
+	public void writeData(SpoutOutputStream output) throws IOException {
+		throw new IOException("Packet batches are written frame by frame");
+	}
+
+	@Override
+	public void run(int playerId) {
+	}
+
+	@Override
+	public void failure(int playerId) {
+	}
+
+	@Override
+	public PacketType getPacketType() {
+		return packets.isEmpty() ? null : packets.get(0).getPacketType();
+	}
+
+	@Override
+	public int getVersion() {
+		return packets.isEmpty() ? 0 : packets.get(0).getVersion();
+	}
+}
@@ -78,6 +78,7 @@ public class PacketBlockData implements CompressiblePacket {
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
+				CompressionStats.record(data.length, bos.size());
 				data = bos.toByteArray();
 			}
 			compressed = true;
@@ -69,6 +69,7 @@ public class PacketCacheFile implements CompressiblePacket {
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
+			CompressionStats.record(fileData.length, bos.size());
 			fileData = bos.toByteArray();
 			compressed = true;
 		}
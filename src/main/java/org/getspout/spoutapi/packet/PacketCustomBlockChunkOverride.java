@@ -23,17 +23,21 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
 
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.block.SpoutChunk;
+import org.getspout.spoutapi.chunkstore.ChunkMetaData;
+import org.getspout.spoutapi.chunkstore.SimpleChunkDataManager;
 import org.getspout.spoutapi.io.SpoutInputStream;
 import org.getspout.spoutapi.io.SpoutOutputStream;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
 import org.bukkit.Chunk;
+import org.bukkit.World;
 import org.bukkit.craftbukkit.v1_6_R3.CraftWorld;
 
 public class PacketCustomBlockChunkOverride implements CompressiblePacket {
@@ -42,6 +46,11 @@ public class PacketCustomBlockChunkOverride implements CompressiblePacket {
 	private boolean hasData = false;
 	private byte[] data;
 	private boolean compressed = false;
+	// Custom blocks still to be encoded, and the chunk whose encoding cache they fill
+	private short[] pendingIds;
+	private byte[] pendingData;
+	private ChunkMetaData source;
+	private int sourceRevision;
 
 	public PacketCustomBlockChunkOverride() {
 	}
@@ -60,6 +69,93 @@ public class PacketCustomBlockChunkOverride implements CompressiblePacket {
 		}
 	}
 
+	/**
+	 * Creates the packet from custom blocks that were already encoded with {@link #encode(short[], byte[])}
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 * @param encoded custom blocks, or null if the chunk has none
+	 */
+	public PacketCustomBlockChunkOverride(int x, int z, byte[] encoded) {
+		chunkX = x;
+		chunkZ = z;
+		if (encoded != null) {
+			data = encoded;
+			hasData = true;
+		}
+		compressed = true;
+	}
+
+	/**
+	 * Creates the packet from a copy of the current custom blocks of a chunk.
+	 * <p/>
+	 * They are encoded when the packet is compressed, and the encoding is then cached with the chunk.
+	 * @param md of the chunk, which must have custom blocks
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 */
+	public PacketCustomBlockChunkOverride(ChunkMetaData md, int x, int z) {
+		chunkX = x;
+		chunkZ = z;
+		sourceRevision = md.getCustomBlocksRevision();
+		source = md;
+		pendingIds = md.getCustomBlockIds().clone();
+		byte[] customData = md.getCustomBlockData();
+		pendingData = customData == null ? null : customData.clone();
+		hasData = true;
+	}
+
+	public int getChunkX() {
+		return chunkX;
+	}
+
+	public int getChunkZ() {
+		return chunkZ;
+	}
+
+	/**
+	 * Creates the packet for a chunk, reusing the encoded custom blocks of the chunk while it is unchanged
+	 * @param world the chunk is in
+	 * @param x coordinate of the chunk
+	 * @param z coordinate of the chunk
+	 * @return packet
+	 */
+	public static PacketCustomBlockChunkOverride forChunk(World world, int x, int z) {
+		SimpleChunkDataManager dm = (SimpleChunkDataManager) SpoutManager.getChunkDataManager();
+		return dm.getCustomBlocksPacket(world, x, z);
+	}
+
+	/**
+	 * Encodes custom blocks in the deflated 3 bytes per block layout sent to the client
+	 * @param customIds of the chunk
+	 * @param customData of the chunk, may be null
+	 * @return encoded custom blocks
+	 */
+	public static byte[] encode(short[] customIds, byte[] customData) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		// Fed in strips so the dense layout is never built in full
+		byte[] strip = new byte[3 * 1024];
+		try {
+			DeflaterOutputStream out = new DeflaterOutputStream(bos, deflater, 4096);
+			int i = 0;
+			while (i < customIds.length) {
+				int n = 0;
+				for (; n < strip.length && i < customIds.length; i++) {
+					strip[n++] = (byte) (customIds[i] >> 8);
+					strip[n++] = (byte) customIds[i];
+					strip[n++] = customData == null ? 0 : customData[i];
+				}
+				out.write(strip, 0, n);
+			}
+			out.finish();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to encode custom blocks", e);
+		} finally {
+			deflater.end();
+		}
+		return bos.toByteArray();
+	}
+
 	@Override
 	public void readData(SpoutInputStream input) throws IOException {
 		chunkX = input.readInt();
@@ -74,6 +170,9 @@ public class PacketCustomBlockChunkOverride implements CompressiblePacket {
 
 	@Override
 	public void writeData(SpoutOutputStream output) throws IOException {
+		if (pendingIds != null) {
+			compress();
+		}
 		output.writeInt(chunkX);
 		output.writeInt(chunkZ);
 		output.writeBoolean(hasData);
@@ -96,8 +195,7 @@ public class PacketCustomBlockChunkOverride implements CompressiblePacket {
 			}
 			Chunk c = player.getWorld().getChunkAt(chunkX, chunkZ);
 			if (c instanceof SpoutChunk) {
-				SpoutChunk chunk = (SpoutChunk)c;
-				player.sendPacket(new PacketCustomBlockChunkOverride(chunk.getCustomBlockIds(), chunk.getCustomBlockData(), chunkX, chunkZ));
+				player.sendPacket(forChunk(c.getWorld(), chunkX, chunkZ));
 			}
 		}
 	}
@@ -117,9 +215,16 @@ public class PacketCustomBlockChunkOverride implements CompressiblePacket {
 	}
 
 	@Override
-	public void compress() {
+	public synchronized void compress() {
 		if (!compressed) {
-			if (data != null && hasData) {
+			if (pendingIds != null) {
+				data = encode(pendingIds, pendingData);
+				CompressionStats.record(pendingIds.length * 2 + (pendingData != null ? pendingData.length : 0), data.length);
+				source.setEncodedCustomBlocks(data, sourceRevision);
+				pendingIds = null;
+				pendingData = null;
+				source = null;
+			} else if (data != null && hasData) {
 				Deflater deflater = new Deflater();
 				deflater.setInput(data);
 				deflater.setLevel(Deflater.BEST_COMPRESSION);
@@ -135,6 +240,7 @@ public class PacketCustomBlockChunkOverride implements CompressiblePacket {
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
+				CompressionStats.record(data.length, bos.size());
 				data = bos.toByteArray();
 			}
 			compressed = true;
@@ -107,6 +107,7 @@ public class PacketCustomMultiBlockOverride implements CompressiblePacket {
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
+				CompressionStats.record(data.length, bos.size());
 				data = bos.toByteArray();
 			}
 			compressed = true;
@@ -130,6 +130,7 @@ public class PacketEntityInformation implements CompressiblePacket {
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
+				CompressionStats.record(data.length, bos.size());
 				data = bos.toByteArray();
 			}
 			compressed = true;
@@ -68,6 +68,7 @@ public class PacketSendPrecache implements CompressiblePacket {
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
+			CompressionStats.record(fileData.length, bos.size());
 			fileData = bos.toByteArray();
 			compressed = true;
 		}
@@ -40,6 +40,14 @@ public class PacketWidget implements SpoutPacket {
 		this.screen = screen;
 	}
 
+	public Widget getWidget() {
+		return widget;
+	}
+
+	public UUID getScreen() {
+		return screen;
+	}
+
 	@Override
 	public void readData(SpoutInputStream input) throws IOException {
 		int id = input.readInt();
@@ -72,15 +80,12 @@ public class PacketWidget implements SpoutPacket {
 		output.writeUUID(screen);
 		output.writeUUID(widget.getId());
 
-		SpoutOutputStream data = new SpoutOutputStream();
-		widget.writeData(data);
-		ByteBuffer buffer = data.getRawBuffer();
-		byte[] widgetData = new byte[buffer.capacity() - buffer.remaining()];
-		System.arraycopy(buffer.array(), 0, widgetData, 0, widgetData.length);
-
-		output.writeInt(widgetData.length);
+		// The widget data is written in place and its length is filled in afterwards
+		int length = output.reserveInt();
 		output.writeShort((short) widget.getVersion());
-		output.write(widgetData);
+		int start = output.getPosition();
+		widget.writeData(output);
+		output.setInt(length, output.getPosition() - start);
 	}
 
 	@Override
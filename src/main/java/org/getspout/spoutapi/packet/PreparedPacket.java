@@ -0,0 +1,168 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spoutapi.packet;
+
+import java.io.IOException;
+
+import org.getspout.spoutapi.io.SpoutInputStream;
+import org.getspout.spoutapi.io.SpoutOutputStream;
+
+/**
+ * A packet that is serialized, and compressed if possible, once and then sent to any number of players.
+ * <p/>
+ * The serialized frame is immutable and shared by reference between every send, so the wrapped packet must not be
+ * modified after it has been prepared. Compressible packets are prepared lazily by the first compression worker
+ * that reaches the frame, other packets are prepared immediately.
+ */
+public final class PreparedPacket implements CompressiblePacket {
+	private final SpoutPacket packet;
+	private volatile byte[] data = null;
+
+	public PreparedPacket(SpoutPacket packet) {
+		if (packet == null) {
+			throw new IllegalArgumentException("Packet can not be null");
+		}
+		this.packet = packet;
+		if (!(packet instanceof CompressiblePacket)) {
+			prepare();
+		}
+	}
+
+	/**
+	 * Gets the packet that this frame was prepared from
+	 * @return packet
+	 */
+	public SpoutPacket getPacket() {
+		return packet;
+	}
+
+	/**
+	 * Gets the serialized payload of the packet, preparing it if that has not happened yet.
+	 * <p/>
+	 * The returned array is shared and must not be modified.
+	 * @return payload
+	 */
+	public byte[] getData() {
+		byte[] data = this.data;
+		if (data == null) {
+			data = prepare();
+		}
+		return data;
+	}
+
+	@SuppressWarnings("deprecation")
+	private synchronized byte[] prepare() {
+		if (data == null) {
+			if (packet instanceof CompressiblePacket) {
+				CompressiblePacket compressible = (CompressiblePacket) packet;
+				if (!compressible.isCompressed()) {
+					compressible.compress();
+				}
+			}
+			SpoutOutputStream stream = SpoutOutputStream.obtain();
+			try {
+				packet.writeData(stream);
+				byte[] prepared = new byte[stream.getPosition()];
+				System.arraycopy(stream.getRawBuffer().array(), 0, prepared, 0, prepared.length);
+				data = prepared;
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to prepare packet " + packet.getPacketType(), e);
+			} finally {
+				stream.release();
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Checks if the wrapped packet still serializes to the prepared payload, for packets whose state may have changed
+	 * since they were prepared. Only meaningful for packets that are not compressible.
+	 * @return true if the payload is up to date
+	 */
+	public boolean isCurrent() {
+		byte[] data = getData();
+		SpoutOutputStream stream = SpoutOutputStream.obtain();
+		try {
+			packet.writeData(stream);
+			if (stream.getPosition() != data.length) {
+				return false;
+			}
+			byte[] current = stream.getRawBuffer().array();
+			for (int i = 0; i < data.length; i++) {
+				if (current[i] != data[i]) {
+					return false;
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			stream.release();
+		}
+	}
+
+	@Override
+	public void compress() {
+		getData();
+	}
+
+	@Override
+	public void decompress() {
+	}
+
+	@Override
+	public boolean isCompressed() {
+		return data != null;
+	}
+
+	@Override
+	public void readData(SpoutInputStream input) throws IOException {
+		throw new IOException("Prepared packets can only be sent");
+	}
+
+	@Override
+	public synchronized void writeData(SpoutOutputStream output) throws IOException {
+		if (data != null) {
+			output.write(data);
+		} else {
+			packet.writeData(output);
+		}
+	}
+
+	@Override
+	public void run(int playerId) {
+		packet.run(playerId);
+	}
+
+	@Override
+	public void failure(int playerId) {
+		packet.failure(playerId);
+	}
+
+	@Override
+	public PacketType getPacketType() {
+		return packet.getPacketType();
+	}
+
+	@Override
+	public int getVersion() {
+		return packet.getVersion();
+	}
+}
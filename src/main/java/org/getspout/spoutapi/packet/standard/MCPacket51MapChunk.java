@@ -84,6 +84,9 @@ public interface MCPacket51MapChunk {
 	public void setSizeZ(int z);
 
 	/**
+	 * Gets the compressed chunk data, which listeners may edit in place.
+	 * <p/>
+	 * While a listener is registered for this packet, chunks are not sent through the client's chunk cache, so edits always reach the client.
 	 * @return chunk data compressed using Deflate
 	 */
 	public byte[] getCompressedChunkData();
@@ -0,0 +1,225 @@
+/*
+ * This file is part of SpoutcraftPlugin.
+ *
+ * Copyright (c) 2011 SpoutcraftDev <http://spoutcraft.org//>
+ * SpoutcraftPlugin is licensed under the GNU Lesser General Public License.
+ *
+ * SpoutcraftPlugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SpoutcraftPlugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.getspout.spoutapi.chunkstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.getspout.spoutapi.SpoutManager;
+import org.getspout.spoutapi.WorldManager;
+import org.getspout.spoutapi.inventory.ItemMap;
+import org.getspout.spoutapi.io.store.FlatFileStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SimpleChunkDataManagerTest {
+	private static final int INDEX = 5;
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void savesLegacyChunkWithoutAccessingIt() throws Exception {
+		final File worldFolder = folder.newFolder("world");
+		final UUID uid = UUID.randomUUID();
+		final World world = stub(World.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getUID")) {
+					return uid;
+				} else if (name.equals("getWorldFolder")) {
+					return worldFolder;
+				} else if (name.equals("getMaxHeight")) {
+					return 256;
+				} else if (name.equals("getName")) {
+					return "world";
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+		setUp(world);
+
+		ItemMap root = new ItemMap(null, new FlatFileStore<Integer>(folder.newFile("itemMap.txt"), Integer.class), null);
+		ItemMap.setRootMap(root);
+		root.register("test.other");
+		int serverId = root.register("test.block");
+
+		File meta = new File(worldFolder, "spout_meta");
+		meta.mkdirs();
+		ItemMap worldMap = new ItemMap(root, new FlatFileStore<Integer>(new File(meta, "worldItemMap.txt"), Integer.class), null);
+		int worldId = worldMap.register("test.block");
+		assertTrue(worldMap.save());
+		assertTrue(worldId != serverId);
+
+		ChunkStore store = new ChunkStore();
+		store.writeChunkMetaData(world, 0, 0, legacyRecord(uid, 0, 0, worldId));
+		store.closeAll();
+
+		SimpleChunkDataManager manager = new SimpleChunkDataManager();
+		manager.prefetchChunk(world, 0, 0).get();
+		assertTrue(manager.saveWorldChunks(world, true));
+
+		short[] ids = manager.getCustomBlockIds(world, 0, 0);
+		assertNotNull(ids);
+		assertEquals(serverId, ids[INDEX]);
+		assertEquals(0, ids[INDEX + 1]);
+		manager.closeAllFiles();
+	}
+
+	private static void setUp(final World world) {
+		if (Bukkit.getServer() == null) {
+			Bukkit.setServer(stub(Server.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String name = method.getName();
+					if (name.equals("getWorld")) {
+						return world;
+					} else if (name.equals("getLogger")) {
+						return Logger.getLogger("Test");
+					} else if (method.getReturnType() == String.class) {
+						return "Test";
+					}
+					return defaultValue(proxy, method, args);
+				}
+			}));
+		}
+		SpoutManager.getInstance().setWorldManager(stub(WorldManager.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getWorldXShiftBits")) {
+					return 12;
+				} else if (name.equals("getWorldZShiftBits")) {
+					return 8;
+				} else if (name.equals("getWorldHeightBits")) {
+					return 8;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		}));
+	}
+
+	/**
+	 * Serializes a chunk in the version 4 layout of ChunkMetaData.writeObject
+	 */
+	private static byte[] legacyRecord(UUID uid, int cx, int cz, int id) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new LegacyOutputStream(bytes);
+		out.writeObject(new LegacyRecord(uid, cx, cz, id));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> clazz, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] {clazz}, handler);
+	}
+
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("equals")) {
+			return proxy == args[0];
+		} else if (name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		} else if (name.equals("toString")) {
+			return proxy.getClass().getName();
+		}
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	private static class LegacyRecord implements Serializable {
+		private static final long serialVersionUID = 3L;
+		private final transient UUID uid;
+		private final transient int cx;
+		private final transient int cz;
+		private final transient int id;
+
+		LegacyRecord(UUID uid, int cx, int cz, int id) {
+			this.uid = uid;
+			this.cx = cx;
+			this.cz = cz;
+			this.id = id;
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			out.writeInt(0xEA5EDEBB);
+			out.writeInt(4);
+			out.writeLong(uid.getLeastSignificantBits());
+			out.writeLong(uid.getMostSignificantBits());
+			out.writeInt(cx);
+			out.writeInt(cz);
+			out.writeBoolean(true);
+			for (int i = 0; i < 16 * 16 * 256; i++) {
+				out.writeShort(i == INDEX ? id : 0);
+			}
+			out.writeInt(0);
+			out.writeBoolean(false);
+		}
+	}
+
+	/**
+	 * Writes records under the class name of ChunkMetaData, as the old ObjectOutputStream format did
+	 */
+	private static class LegacyOutputStream extends ObjectOutputStream {
+		LegacyOutputStream(OutputStream out) throws IOException {
+			super(out);
+		}
+
+		@Override
+		protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+			if (desc.forClass() != LegacyRecord.class) {
+				super.writeClassDescriptor(desc);
+				return;
+			}
+			writeUTF(ChunkMetaData.class.getName());
+			writeLong(desc.getSerialVersionUID());
+			writeByte(ObjectStreamConstants.SC_SERIALIZABLE | ObjectStreamConstants.SC_WRITE_METHOD);
+			writeShort(0);
+		}
+	}
+}